@@ -0,0 +1,74 @@
+package org.kohsuke.graph_layouter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget and cancellation hook of a layout computation.
+ *
+ * <p>
+ * The iterative phases of the layout check this object as they go. Once it's expired,
+ * they stop and keep the best state they have found so far, so the caller still gets
+ * a valid, if less optimized, layout.
+ *
+ * <p>
+ * A deadline expires when the time runs out, when {@link #cancel()} is called,
+ * or when the thread computing the layout is interrupted. The interrupted status
+ * of the thread is left as is, so that the caller can see it.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class Deadline {
+    /**
+     * {@link System#nanoTime()} when this deadline expires.
+     */
+    private final long expiresAt;
+    private final boolean bounded;
+    private volatile boolean cancelled;
+
+    private Deadline(long expiresAt, boolean bounded) {
+        this.expiresAt = expiresAt;
+        this.bounded = bounded;
+    }
+
+    /**
+     * Creates a deadline that only expires when it's cancelled or the thread is interrupted.
+     */
+    public static Deadline unbounded() {
+        return new Deadline(0,false);
+    }
+
+    /**
+     * Creates a deadline that expires after the given amount of time from now.
+     */
+    public static Deadline after(long duration, TimeUnit unit) {
+        return new Deadline(System.nanoTime()+unit.toNanos(duration),true);
+    }
+
+    /**
+     * Makes this deadline expire now.
+     * This can be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Checks if the computation should stop now.
+     */
+    public boolean isExpired() {
+        return cancelled
+            || Thread.currentThread().isInterrupted()
+            || (bounded && System.nanoTime()-expiresAt>=0);
+    }
+
+    /**
+     * Null-safe version of {@link #isExpired()}, where null means no deadline.
+     */
+    public static boolean isExpired(Deadline d) {
+        return d!=null && d.isExpired();
+    }
+}
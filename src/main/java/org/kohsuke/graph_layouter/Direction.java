@@ -1,8 +1,49 @@
 package org.kohsuke.graph_layouter;
 
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+
 /**
  * @author Kohsuke Kawaguchi
  */
 public enum Direction {
-    TOPDOWN, LEFTRIGHT
+    TOPDOWN, LEFTRIGHT;
+
+    /**
+     * Converts between the coordinates of the layout algorithm, which always lays out top-down,
+     * and the coordinates in this direction. The conversion is its own inverse.
+     */
+    @SuppressWarnings({"SuspiciousNameCombination"})
+    /*package*/ Dimension rotate(Dimension sz) {
+        switch (this) {
+        case LEFTRIGHT:
+            return new Dimension(sz.height,sz.width);
+        case TOPDOWN:
+            return sz;
+        }
+        throw new AssertionError();
+    }
+
+    @SuppressWarnings({"SuspiciousNameCombination"})
+    /*package*/ Point rotate(Point p) {
+        switch (this) {
+        case LEFTRIGHT:
+            return new Point(p.y,p.x);
+        case TOPDOWN:
+            return p;
+        }
+        throw new AssertionError();
+    }
+
+    @SuppressWarnings({"SuspiciousNameCombination"})
+    /*package*/ Rectangle rotate(Rectangle r) {
+        switch (this) {
+        case LEFTRIGHT:
+            return new Rectangle(r.y, r.x, r.height, r.width);
+        case TOPDOWN:
+            return r;
+        }
+        throw new AssertionError();
+    }
 }
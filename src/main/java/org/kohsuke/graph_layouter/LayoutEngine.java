@@ -0,0 +1,358 @@
+package org.kohsuke.graph_layouter;
+
+import org.kohsuke.graph_layouter.impl.CoordinateAssigner;
+import org.kohsuke.graph_layouter.impl.Coordinator;
+import org.kohsuke.graph_layouter.impl.EdgeDirection;
+import org.kohsuke.graph_layouter.impl.HierarchyBuilder;
+import org.kohsuke.graph_layouter.impl.Level;
+import org.kohsuke.graph_layouter.impl.LevelMap;
+import org.kohsuke.graph_layouter.impl.OrderAssigner;
+import org.kohsuke.graph_layouter.impl.ProperTransformer;
+import org.kohsuke.graph_layouter.impl.StraightenLongEdge;
+import org.kohsuke.graph_layouter.impl.Vertex;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Computes layouts.
+ *
+ * <p>
+ * An engine holds the configuration, and can be used for any number of layouts.
+ * Each layout is returned as a {@link LayoutResult}, which holds on to just the positions,
+ * so the graph built for the computation can be garbage collected right away.
+ * Once configured, an engine can be used from multiple threads at once,
+ * as long as the {@link #setCoordinateAssigner(CoordinateAssigner) coordinate assigner} can be.
+ *
+ * <p>
+ * {@link #layoutAsync(Navigator, Direction, Deadline, Executor)} computes a layout
+ * on the given executor instead of the calling thread.
+ *
+ * <p>
+ * Weakly connected components of the graph never affect each other's layout,
+ * so by default each of them is laid out by itself, and then they are put together
+ * by {@link #setPacking(Packing) the packing}. With {@link #setExecutor(ExecutorService) an executor},
+ * the components are laid out in parallel.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class LayoutEngine {
+    private CoordinateAssigner coordinates;
+    private boolean concentrate;
+    private Packing packing = new Packing.SideBySide();
+    private ExecutorService executor;
+
+    /**
+     * Sets the coordinate assignment algorithm, such as {@link org.kohsuke.graph_layouter.impl.BrandesKopf}.
+     *
+     * @param coordinates
+     *      If null, which is the default, a new {@link Coordinator} is used for each layout.
+     *      Otherwise the algorithm is used as configured by the caller, and shared by all the layouts.
+     *      Either way, the deadline of each layout is passed to {@link CoordinateAssigner#layout(LevelMap, Deadline)}.
+     */
+    public void setCoordinateAssigner(CoordinateAssigner coordinates) {
+        this.coordinates = coordinates;
+    }
+
+    /**
+     * Chooses whether long edges that share an end share their waypoints, too.
+     *
+     * @see ProperTransformer#setConcentrate(boolean)
+     */
+    public void setConcentrate(boolean concentrate) {
+        this.concentrate = concentrate;
+    }
+
+    /**
+     * Sets how the connected components are put together.
+     *
+     * @param packing
+     *      If null, the whole graph is laid out at once, so that the components share the levels.
+     *      The default is {@link Packing.SideBySide}.
+     */
+    public void setPacking(Packing packing) {
+        this.packing = packing;
+    }
+
+    /**
+     * Sets the executor to lay out the connected components in parallel.
+     *
+     * <p>
+     * The calling thread lays out components, too, while it waits for the others,
+     * so it's fine to use the same executor as {@link #layoutAsync(Navigator, Direction, Deadline, Executor)}.
+     * When the {@link #setCoordinateAssigner(CoordinateAssigner) coordinate assigner} is set,
+     * it's used by multiple threads at once.
+     *
+     * @param executor
+     *      If null, which is the default, the components are laid out one by one in the calling thread.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Computes the layout.
+     */
+    public <T> LayoutResult<T> layout(Navigator<T> nav, Direction dir) {
+        return layout(nav,dir,null);
+    }
+
+    /**
+     * Computes the layout within the given deadline.
+     *
+     * <p>
+     * When the deadline expires, each remaining optimization phase stops with the best
+     * result it has so far, so the positions are still valid but less optimized.
+     *
+     * @param deadline
+     *      If null, there's no time bound.
+     */
+    public <T> LayoutResult<T> layout(Navigator<T> nav, Direction dir, Deadline deadline) {
+        Map<T,Vertex<T>> graph = new LinkedHashMap<T,Vertex<T>>();
+        build(nav,dir,graph);
+
+        List<List<Vertex<T>>> components = packing!=null ? components(graph.values()) : null;
+        if(components==null || components.size()<=1)
+            layout(new ArrayList<Vertex<T>>(graph.values()),deadline);
+        else
+            pack(layoutComponents(components,deadline));
+
+        return new LayoutResult<T>(graph,dir);
+    }
+
+    /**
+     * Computes the layout on the given executor.
+     *
+     * @see #layoutAsync(Navigator, Direction, Deadline, Executor)
+     */
+    public <T> CompletableFuture<LayoutResult<T>> layoutAsync(Navigator<T> nav, Direction dir, Executor executor) {
+        return layoutAsync(nav,dir,null,executor);
+    }
+
+    /**
+     * Computes the layout within the given deadline on the given executor.
+     *
+     * <p>
+     * The computation runs as a single task, which only blocks if the navigator
+     * or the {@link #setCoordinateAssigner(CoordinateAssigner) coordinate assigner} does,
+     * so any executor will do, including one that runs each task on a virtual thread.
+     *
+     * <p>
+     * Cancelling the returned future, with or without interruption, cancels the deadline.
+     * If the task hasn't started by then, it doesn't run at all. Otherwise the remaining
+     * phases stop right away, just as they do when the deadline expires, and the result is discarded.
+     * This includes the {@link #setCoordinateAssigner(CoordinateAssigner) coordinate assigner},
+     * which gets the deadline through {@link CoordinateAssigner#layout(LevelMap, Deadline)}.
+     *
+     * @param deadline
+     *      If null, there's no time bound, but the computation can still be cancelled.
+     *      Otherwise it gets cancelled along with the future, so don't share it with other computations
+     *      that should keep going.
+     */
+    public <T> CompletableFuture<LayoutResult<T>> layoutAsync(final Navigator<T> nav, final Direction dir, Deadline deadline, Executor executor) {
+        final Deadline d = deadline!=null ? deadline : Deadline.unbounded();
+        final CompletableFuture<LayoutResult<T>> f = CompletableFuture.supplyAsync(new Supplier<LayoutResult<T>>() {
+            public LayoutResult<T> get() {
+                return layout(nav,dir,d);
+            }
+        }, executor);
+        f.whenComplete(new BiConsumer<LayoutResult<T>,Throwable>() {
+            public void accept(LayoutResult<T> r, Throwable e) {
+                if(f.isCancelled())
+                    d.cancel();
+            }
+        });
+        return f;
+    }
+
+    /**
+     * Builds the graph from the navigator and lays it out as a whole.
+     *
+     * @param graph
+     *      Receives the vertices of the graph, in the order of the navigator.
+     * @return
+     *      the laid out graph, including the dummy vertices.
+     */
+    /*package*/ <T> LevelMap<T> compute(Navigator<T> nav, Direction dir, Deadline deadline, Map<T,Vertex<T>> graph) {
+        build(nav,dir,graph);
+        return layout(new ArrayList<Vertex<T>>(graph.values()),deadline);
+    }
+
+    /**
+     * Builds the graph from the navigator.
+     */
+    private <T> void build(Navigator<T> nav, Direction dir, Map<T,Vertex<T>> graph) {
+        Collection<T> vertices = nav.vertices();
+
+        for (T t : vertices)
+            graph.put(t,new Vertex<T>(t,dir.rotate(nav.getSize(t))));
+
+        for (T t : vertices) {
+            Vertex<T> v = graph.get(t);
+            for (T u : nav.edge(t))
+                v.addEdge(graph.get(u));
+        }
+    }
+
+    /**
+     * Lays out the given vertices, which are altered to include the dummy vertices.
+     */
+    private <T> LevelMap<T> layout(List<Vertex<T>> g, Deadline deadline) {
+        // four steps algorithm
+        new HierarchyBuilder().assignLevels(g, EdgeDirection.FORWARD);
+        ProperTransformer pt = new ProperTransformer();
+        pt.setConcentrate(concentrate);
+        pt.makeProper(g);
+        OrderAssigner oa = new OrderAssigner();
+        oa.setDeadline(deadline);
+        LevelMap<T> lm = oa.layout(g);
+
+        CoordinateAssigner coordinates = this.coordinates!=null ? this.coordinates : new Coordinator();
+        coordinates.layout(lm,deadline);
+
+        StraightenLongEdge<T> s = new StraightenLongEdge<T>();
+        s.setDeadline(deadline);
+        s.layout(lm);
+        return lm;
+    }
+
+    /**
+     * Splits the graph into weakly connected components,
+     * in the order of their first vertices in the graph.
+     */
+    private static <T> List<List<Vertex<T>>> components(Collection<Vertex<T>> graph) {
+        List<List<Vertex<T>>> components = new ArrayList<List<Vertex<T>>>();
+        Set<Vertex<T>> visited = new HashSet<Vertex<T>>();
+        Deque<Vertex<T>> stack = new ArrayDeque<Vertex<T>>();
+        for (Vertex<T> v : graph) {
+            if(!visited.add(v))     continue;
+            List<Vertex<T>> c = new ArrayList<Vertex<T>>();
+            stack.push(v);
+            while(!stack.isEmpty()) {
+                Vertex<T> u = stack.pop();
+                c.add(u);
+                for (Vertex<T> w : u.forward)
+                    if(visited.add(w))  stack.push(w);
+                for (Vertex<T> w : u.backward)
+                    if(visited.add(w))  stack.push(w);
+            }
+            components.add(c);
+        }
+        return components;
+    }
+
+    /**
+     * Lays out each component by itself, in parallel if there's an executor.
+     *
+     * <p>
+     * Each thread, including the calling thread, takes the next component that nobody has taken yet,
+     * so the calling thread only waits for those that are being laid out by the other threads.
+     * Thus this works even when the executor is busy, or is the one that runs the calling thread.
+     */
+    private <T> List<LevelMap<T>> layoutComponents(final List<List<Vertex<T>>> components, final Deadline deadline) {
+        final int n = components.size();
+        final AtomicReferenceArray<LevelMap<T>> maps = new AtomicReferenceArray<LevelMap<T>>(n);
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(n);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Runnable worker = new Runnable() {
+            public void run() {
+                int i;
+                while((i=next.getAndIncrement())<n) {
+                    try {
+                        maps.set(i,layout(components.get(i),deadline));
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null,t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+
+        if(executor!=null) {
+            int helpers = Math.min(n,Runtime.getRuntime().availableProcessors())-1;
+            try {
+                for( int i=0; i<helpers; i++ )
+                    executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                // fine, we'll do the rest by ourselves
+            }
+        }
+        worker.run();
+
+        // wait for the components taken by the others. they don't take long, as they are all running now
+        boolean interrupted = false;
+        while(true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
+
+        Throwable t = failure.get();
+        if(t instanceof RuntimeException)   throw (RuntimeException)t;
+        if(t instanceof Error)              throw (Error)t;
+        if(t!=null)                         throw new IllegalStateException(t);
+
+        List<LevelMap<T>> r = new ArrayList<LevelMap<T>>(n);
+        for( int i=0; i<n; i++ )
+            r.add(maps.get(i));
+        return r;
+    }
+
+    /**
+     * Moves the laid out components to where {@link #packing} places them.
+     */
+    private <T> void pack(List<LevelMap<T>> components) {
+        List<Rectangle> bounds = new ArrayList<Rectangle>(components.size());
+        List<Dimension> boxes = new ArrayList<Dimension>(components.size());
+        for (LevelMap<T> lm : components) {
+            Rectangle area = null;
+            for (Level<T> lv : lm.levels()) {
+                for (Vertex<T> v : lv.vertices) {
+                    if(area==null)  area = v.boundBox();
+                    else            area.add(v.boundBox());
+                }
+            }
+            if(area==null)  area = new Rectangle();
+            bounds.add(area);
+            boxes.add(area.getSize());
+        }
+
+        List<Point> positions = packing.pack(boxes);
+        for( int i=0; i<components.size(); i++ ) {
+            Rectangle area = bounds.get(i);
+            Point p = positions.get(i);
+            int dx = p.x-area.x, dy = p.y-area.y;
+            for (Level<T> lv : components.get(i).levels())
+                for (Vertex<T> v : lv.vertices)
+                    v.pos.translate(dx,dy);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package org.kohsuke.graph_layouter;
+
+import org.kohsuke.graph_layouter.impl.Vertex;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computed positions of a graph, as returned by {@link LayoutEngine}.
+ *
+ * <p>
+ * The positions and the waypoints are kept in primitive arrays, and nothing of
+ * the graph that the layout was computed on is retained, except the vertex objects
+ * themselves. This object is immutable, and can be shared by multiple threads.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class LayoutResult<T> {
+    /**
+     * Vertices in the order of {@link Navigator#vertices()}.
+     */
+    private final Object[] tags;
+    /**
+     * Open addressing hash table from the vertex to 1+its index in {@link #tags}. 0 is an empty slot.
+     */
+    private final int[] index;
+    /**
+     * x, y, width and height of the i-th vertex at [4i,4i+4).
+     */
+    private final int[] bounds;
+    /**
+     * Edges from the i-th vertex go to edgeTarget[j] for j from edgeStart[i] to edgeStart[i+1].
+     */
+    private final int[] edgeStart, edgeTarget;
+    /**
+     * Waypoints of the j-th edge are (points[2k],points[2k+1]) for k from pointStart[j] to pointStart[j+1].
+     */
+    private final int[] pointStart, points;
+    private final int areaX, areaY, areaWidth, areaHeight;
+
+    /**
+     * Freezes the laid out graph.
+     *
+     * @param graph
+     *      the real vertices of the graph, in the order to be reported.
+     *      The dummy vertices are reached from them.
+     */
+    /*package*/ LayoutResult(Map<T,Vertex<T>> graph, Direction dir) {
+        int n = graph.size();
+        tags = graph.keySet().toArray();
+        index = new int[Integer.highestOneBit(n*2+1)*2];
+        for (int i=0; i<n; i++)
+            index[slot(tags[i])] = i+1;
+
+        bounds = new int[n*4];
+        edgeStart = new int[n+1];
+        IntList targets = new IntList();
+        IntList pointStarts = new IntList();
+        IntList pts = new IntList();
+        Rectangle area = null;
+
+        int i=0;
+        for (Vertex<T> v : graph.values()) {
+            Rectangle r = dir.rotate(v.boundBox());
+            bounds[i*4  ] = r.x;
+            bounds[i*4+1] = r.y;
+            bounds[i*4+2] = r.width;
+            bounds[i*4+3] = r.height;
+            if(area==null)  area = r;
+            else            area.add(r);
+
+            for (Vertex<T> w : v.forward) {
+                if(!w.isDummy()) {
+                    // direct edge
+                    targets.add(indexOf(w.tag));
+                    pointStarts.add(pts.size/2);
+                } else
+                if(w.sink!=null) {
+                    targets.add(indexOf(w.sink.tag));
+                    pointStarts.add(pts.size/2);
+                    for( Vertex<T> c=w; c.isDummy(); c=c.forward.iterator().next() )
+                        pts.add(dir.rotate(c.pos));
+                } else {
+                    // a chain shared by edges from v. each edge follows it until it leaves
+                    IntList trunk = new IntList();
+                    for( Vertex<T> c=w; c!=null; c=nextDummy(c) ) {
+                        trunk.add(dir.rotate(c.pos));
+                        for (Vertex<T> u : c.forward) {
+                            if(u.isDummy())     continue;
+                            targets.add(indexOf(u.tag));
+                            pointStarts.add(pts.size/2);
+                            pts.addAll(trunk);
+                        }
+                    }
+                }
+            }
+            edgeStart[++i] = targets.size;
+        }
+        pointStarts.add(pts.size/2);
+
+        edgeTarget = targets.toArray();
+        pointStart = pointStarts.toArray();
+        points = pts.toArray();
+
+        if(area==null)  area = new Rectangle();
+        areaX = area.x;
+        areaY = area.y;
+        areaWidth = area.width;
+        areaHeight = area.height;
+    }
+
+    private static <T> Vertex<T> nextDummy(Vertex<T> c) {
+        for (Vertex<T> u : c.forward)
+            if(u.isDummy())
+                return u;
+        return null;
+    }
+
+    /**
+     * Finds the slot of the hash table for the given vertex,
+     * which is either where it is or the empty slot where it would be.
+     */
+    private int slot(Object t) {
+        int mask = index.length-1;
+        int h = t.hashCode();
+        int s = (h^(h>>>16))&mask;
+        while(index[s]!=0 && !tags[index[s]-1].equals(t))
+            s = (s+1)&mask;
+        return s;
+    }
+
+    /**
+     * Returns the index of the vertex in {@link #tags}, or -1 if there's no such vertex.
+     */
+    private int indexOf(Object t) {
+        if(t==null) return -1;
+        return index[slot(t)]-1;
+    }
+
+    /**
+     * Returns all the vertices.
+     */
+    @SuppressWarnings("unchecked")
+    public Collection<T> vertices() {
+        return (List<T>)Collections.unmodifiableList(Arrays.asList(tags));
+    }
+
+    /**
+     * Returns all the edges from the given vertex.
+     *
+     * @return
+     *      null if t was not reported by {@link Navigator}.
+     */
+    public Collection<T> edges(T t) {
+        final int i = indexOf(t);
+        if(i<0) return null;
+        return new AbstractList<T>() {
+            @SuppressWarnings("unchecked")
+            public T get(int j) {
+                if(j<0 || j>=size())
+                    throw new IndexOutOfBoundsException(String.valueOf(j));
+                return (T)tags[edgeTarget[edgeStart[i]+j]];
+            }
+
+            public int size() {
+                return edgeStart[i+1]-edgeStart[i];
+            }
+        };
+    }
+
+    /**
+     * Gets the bounding box of the vertex.
+     *
+     * @return
+     *      null if t was not reported by {@link Navigator}.
+     */
+    public Rectangle vertex(T t) {
+        int i = indexOf(t);
+        if(i<0) return null;
+        return new Rectangle(bounds[i*4],bounds[i*4+1],bounds[i*4+2],bounds[i*4+3]);
+    }
+
+    /**
+     * Gets the way points of the edge (v,w)
+     *
+     * @return
+     *      null if there's no such edge.
+     *      Otherwise the list will contain any intermediate waypoints from v to w.
+     *      If the edge (v,w) should be drawn as a straight-line, then
+     *      this method returns empty list.
+     */
+    public List<Point> edge(T v, T w) {
+        int a = indexOf(v);
+        if(a<0) return null;
+        int b = indexOf(w);
+        if(b<0) return null;
+
+        int j = find(a,b);
+        if(j>=0)
+            return points(j,false);
+        j = find(b,a);
+        if(j>=0)
+            return points(j,true);
+        return null;
+    }
+
+    /**
+     * Returns the index of the edge from a to b, or -1 if there's no such edge.
+     */
+    private int find(int a, int b) {
+        for( int j=edgeStart[a]; j<edgeStart[a+1]; j++ )
+            if(edgeTarget[j]==b)
+                return j;
+        return -1;
+    }
+
+    private List<Point> points(int j, boolean reverse) {
+        int s = pointStart[j], e = pointStart[j+1];
+        List<Point> r = new ArrayList<Point>(e-s);
+        for( int k=s; k<e; k++ ) {
+            int p = reverse ? s+e-1-k : k;
+            r.add(new Point(points[p*2],points[p*2+1]));
+        }
+        return r;
+    }
+
+    /**
+     * Computes the size needed to hold all figures.
+     */
+    public Rectangle calcDrawingArea() {
+        return new Rectangle(areaX,areaY,areaWidth,areaHeight);
+    }
+
+    /**
+     * Growable int array to build the arrays with.
+     */
+    private static final class IntList {
+        int[] data = new int[16];
+        int size;
+
+        void add(int i) {
+            if(size==data.length)
+                data = Arrays.copyOf(data,size*2);
+            data[size++] = i;
+        }
+
+        void add(Point p) {
+            add(p.x);
+            add(p.y);
+        }
+
+        void addAll(IntList l) {
+            for( int k=0; k<l.size; k++ )
+                add(l.data[k]);
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data,size);
+        }
+    }
+}
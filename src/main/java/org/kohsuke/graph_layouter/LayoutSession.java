@@ -0,0 +1,156 @@
+package org.kohsuke.graph_layouter;
+
+import org.kohsuke.graph_layouter.impl.IncrementalLayouter;
+import org.kohsuke.graph_layouter.impl.LevelMap;
+import org.kohsuke.graph_layouter.impl.Vertex;
+
+import java.awt.Dimension;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Layout of a graph that changes a few vertices and edges at a time.
+ *
+ * <p>
+ * Changes are made by {@link #addVertex(Object, Dimension)}, {@link #addEdge(Object, Object)},
+ * {@link #removeVertex(Object)} and {@link #removeEdge(Object, Object)}, and then {@link #relayout()}
+ * updates the positions. Rather than computing the layout again, it starts from the current one
+ * and only reconsiders the levels and the vertices around the changes, so it takes time
+ * proportional to the size of the change. See {@link IncrementalLayouter} for the details.
+ *
+ * <p>
+ * The positions are queried through {@link #freeze()}, which reports the layout as of the last
+ * {@link #relayout()}, except that removed vertices and edges are gone right away.
+ * This class is not thread-safe, but the snapshots are.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class LayoutSession<T> {
+    /**
+     * Vertices that are laid out.
+     */
+    private final Map<T,Vertex<T>> graph = new LinkedHashMap<T,Vertex<T>>();
+    /**
+     * Vertices added since the last {@link #relayout()}, which don't have their positions yet.
+     */
+    private final Map<T,Vertex<T>> fresh = new LinkedHashMap<T,Vertex<T>>();
+    private final Direction dir;
+    private final IncrementalLayouter<T> layouter;
+    /**
+     * Snapshot of the current layout, or null if it has changed since the last {@link #freeze()}.
+     */
+    private LayoutResult<T> snapshot;
+
+    /**
+     * Starts from an empty graph.
+     */
+    public LayoutSession(Direction dir) {
+        this.dir = dir;
+        layouter = new IncrementalLayouter<T>(new LevelMap<T>());
+    }
+
+    /**
+     * Starts from the graph of the navigator, which is laid out from scratch as {@link Layout} does,
+     * except that the connected components are laid out together, as they may get connected later.
+     * The navigator isn't used after this.
+     */
+    public LayoutSession(Navigator<T> nav, Direction dir) {
+        this.dir = dir;
+        layouter = new IncrementalLayouter<T>(new LayoutEngine().compute(nav,dir,null,graph));
+    }
+
+    /**
+     * Sets the deadline of each {@link #relayout()}.
+     *
+     * @param deadline
+     *      If null, which is the default, there's no time bound.
+     */
+    public void setDeadline(Deadline deadline) {
+        layouter.setDeadline(deadline);
+    }
+
+    /**
+     * Adds a vertex. Nothing happens if it's already there.
+     */
+    public void addVertex(T t, Dimension size) {
+        if(graph.containsKey(t) || fresh.containsKey(t))
+            return;
+        Vertex<T> v = new Vertex<T>(t,dir.rotate(size));
+        fresh.put(t,v);
+        layouter.addVertex(v);
+    }
+
+    /**
+     * Adds an edge from v to w. Nothing happens if there's already an edge between them.
+     *
+     * @throws IllegalArgumentException
+     *      if either of the vertices isn't in the graph.
+     */
+    public void addEdge(T v, T w) {
+        layouter.addEdge(get(v),get(w));
+    }
+
+    /**
+     * Removes the vertex and all its edges.
+     *
+     * @return
+     *      false if there's no such vertex.
+     */
+    public boolean removeVertex(T t) {
+        Vertex<T> v = fresh.remove(t);
+        if(v==null) {
+            v = graph.remove(t);
+            if(v==null) return false;
+            snapshot = null;
+        }
+        layouter.removeVertex(v);
+        return true;
+    }
+
+    /**
+     * Removes the edge between v and w.
+     *
+     * @return
+     *      false if there's no such edge.
+     */
+    public boolean removeEdge(T v, T w) {
+        Vertex<T> a = find(v);
+        Vertex<T> b = find(w);
+        if(a==null || b==null || !layouter.removeEdge(a,b))
+            return false;
+        snapshot = null;
+        return true;
+    }
+
+    /**
+     * Updates the layout for the changes made since the last call.
+     */
+    public void relayout() {
+        layouter.relayout();
+        graph.putAll(fresh);
+        fresh.clear();
+        snapshot = null;
+    }
+
+    /**
+     * Takes a snapshot of the current layout, which is cheap to keep and to share
+     * across threads. The same snapshot is returned until the layout changes.
+     */
+    public LayoutResult<T> freeze() {
+        if(snapshot==null)
+            snapshot = new LayoutResult<T>(graph,dir);
+        return snapshot;
+    }
+
+    private Vertex<T> find(T t) {
+        Vertex<T> v = graph.get(t);
+        return v!=null ? v : fresh.get(t);
+    }
+
+    private Vertex<T> get(T t) {
+        Vertex<T> v = find(t);
+        if(v==null)
+            throw new IllegalArgumentException("No such vertex: "+t);
+        return v;
+    }
+}
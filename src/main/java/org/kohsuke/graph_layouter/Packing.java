@@ -0,0 +1,118 @@
+package org.kohsuke.graph_layouter;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Arranges the separately laid out connected components of a graph into one drawing.
+ *
+ * <p>
+ * Packing works in the coordinates of {@link Direction#TOPDOWN}, where edges go downward.
+ * For other directions, the packed drawing is rotated along with everything else.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see LayoutEngine#setPacking(Packing)
+ */
+public interface Packing {
+    /**
+     * Places the bounding boxes of the components so that they don't overlap.
+     *
+     * @param boxes
+     *      sizes of the bounding boxes, in the order the components appear in {@link Navigator#vertices()}.
+     * @return
+     *      the top-left corner of each box, in the same order.
+     */
+    List<Point> pack(List<Dimension> boxes);
+
+    /**
+     * Puts all the components on one row, from left to right with their tops aligned,
+     * so that roots of all the components are on the top.
+     */
+    public class SideBySide implements Packing {
+        private final int gap;
+
+        public SideBySide() {
+            this(10);
+        }
+
+        /**
+         * @param gap
+         *      space between two components.
+         */
+        public SideBySide(int gap) {
+            this.gap = gap;
+        }
+
+        public List<Point> pack(List<Dimension> boxes) {
+            List<Point> r = new ArrayList<Point>(boxes.size());
+            int x=0;
+            for (Dimension d : boxes) {
+                r.add(new Point(x,0));
+                x += d.width+gap;
+            }
+            return r;
+        }
+    }
+
+    /**
+     * Puts the components on rows of about the same width, in the way of the next-fit
+     * decreasing height algorithm, so that the drawing is roughly square
+     * even when there are many components.
+     */
+    public class Shelf implements Packing {
+        private final int gap;
+
+        public Shelf() {
+            this(10);
+        }
+
+        /**
+         * @param gap
+         *      space between two components, and between two rows.
+         */
+        public Shelf(int gap) {
+            this.gap = gap;
+        }
+
+        public List<Point> pack(final List<Dimension> boxes) {
+            int n = boxes.size();
+            long area=0;
+            int widest=0;
+            for (Dimension d : boxes) {
+                area += (long)(d.width+gap)*(d.height+gap);
+                widest = Math.max(widest,d.width);
+            }
+            int width = Math.max(widest,(int)Math.sqrt(area));
+
+            // taller ones first, so that each row wastes less space below the shorter ones
+            Integer[] order = new Integer[n];
+            for( int i=0; i<n; i++ )
+                order[i] = i;
+            Arrays.sort(order,new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return boxes.get(b).height-boxes.get(a).height;
+                }
+            });
+
+            Point[] r = new Point[n];
+            int x=0, y=0, rowHeight=0;
+            for (int i : order) {
+                Dimension d = boxes.get(i);
+                if(x>0 && x+d.width>width) {
+                    // start a new row
+                    x = 0;
+                    y += rowHeight+gap;
+                    rowHeight = 0;
+                }
+                r[i] = new Point(x,y);
+                x += d.width+gap;
+                rowHeight = Math.max(rowHeight,d.height);
+            }
+            return Arrays.asList(r);
+        }
+    }
+}
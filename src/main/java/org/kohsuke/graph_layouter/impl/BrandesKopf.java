@@ -0,0 +1,390 @@
+package org.kohsuke.graph_layouter.impl;
+
+import org.kohsuke.graph_layouter.Deadline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+import static org.kohsuke.graph_layouter.impl.Spacing.X_GAP;
+import static org.kohsuke.graph_layouter.impl.Spacing.Y_GAP;
+
+/**
+ * Assigns (X,Y) coordinates by the method of Brandes and K&ouml;pf [BK01].
+ *
+ * <p>
+ * Each vertex is aligned with a median neighbour on the adjacent level, so that vertices form
+ * vertical blocks, and then the blocks are packed to the left. This is done four times,
+ * aligning with the upper or the lower neighbours and packing to the left or to the right,
+ * and the final X coordinate is the average of the two median coordinates among the four.
+ *
+ * <p>
+ * Segments between two dummy vertices (inner segments of long edges) are never crossed by
+ * an alignment, so long edges are drawn mostly straight. Unlike {@link Coordinator},
+ * this runs in time linear to the size of the graph.
+ *
+ * <p>
+ * The blocks are packed by the longest path on the graph of blocks, where each block is
+ * placed as far as its left neighbours allow. This is a simpler replacement of the class
+ * and shift computation of the paper.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class BrandesKopf implements CoordinateAssigner {
+    private ExecutorService executor;
+
+    /**
+     * Sets the executor to compute the four alignments concurrently.
+     *
+     * @param executor
+     *      If null, which is the default, they are computed one by one on the calling thread.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public <T> void layout(LevelMap<T> lm) {
+        layout(lm,null);
+    }
+
+    /**
+     * Once the deadline expires, the remaining alignments are skipped,
+     * and the vertices are placed by just one of them.
+     */
+    public <T> void layout(LevelMap<T> lm, Deadline deadline) {
+        final Blocks<T> g = new Blocks<T>(lm);
+        if(g.n==0)  return;
+
+        List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>(4);
+        for (final boolean down : new boolean[]{true,false})
+            for (final boolean left : new boolean[]{true,false})
+                tasks.add(new Callable<int[]>() {
+                    public int[] call() {
+                        return g.place(down,left);
+                    }
+                });
+
+        int[][] xs = new int[4][];
+        if(Deadline.isExpired(deadline))
+            xs = null;
+        else try {
+            if(executor!=null) {
+                List<Future<int[]>> futures = executor.invokeAll(tasks);
+                for( int i=0; i<4; i++ )
+                    xs[i] = futures.get(i).get();
+            } else {
+                for( int i=0; i<4; i++ ) {
+                    if(i>0 && Deadline.isExpired(deadline)) {
+                        xs = null;
+                        break;
+                    }
+                    xs[i] = tasks.get(i).call();
+                }
+            }
+        } catch (InterruptedException e) {
+            // leave the positions as computed so far, after making them valid
+            Thread.currentThread().interrupt();
+            xs = null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException)   throw (RuntimeException)cause;
+            if(cause instanceof Error)              throw (Error)cause;
+            throw new IllegalStateException(cause);
+        } catch (Exception e) {
+            throw new AssertionError(e);    // our tasks don't throw checked exceptions
+        }
+
+        int[] x = xs!=null ? g.balance(xs) : g.place(true,true);
+        g.store(x);
+    }
+
+    /**
+     * Snapshot of the proper graph, where vertices are identified by int IDs,
+     * and the computation of the blocks on it.
+     */
+    private final class Blocks<T> {
+        final int n;
+        final Vertex<T>[] vertices;
+        /**
+         * Vertex IDs of each level, from the top, in their order.
+         */
+        final int[][] levels;
+        /**
+         * Level index of each vertex.
+         */
+        final int[] level;
+        /**
+         * Neighbours on the level above of the vertex v are {@code upAdj[upStart[v]..upStart[v+1])},
+         * sorted by the order, and likewise for the level below.
+         */
+        final int[] upStart, upAdj, downStart, downAdj;
+        /**
+         * Whether the edge at each position of {@link #upAdj} and {@link #downAdj} crosses an inner segment.
+         * Aligning along such edges would bend long edges.
+         */
+        final boolean[] upConflict, downConflict;
+
+        @SuppressWarnings({"unchecked","rawtypes"})
+        Blocks(LevelMap<T> lm) {
+            List<Vertex<T>> all = new ArrayList<Vertex<T>>();
+            levels = new int[lm.levels().size()][];
+            int i=0;
+            for (Level<T> lv : lm.levels()) {
+                levels[i] = new int[lv.vertices.size()];
+                for( int j=0; j<levels[i].length; j++ ) {
+                    levels[i][j] = all.size();
+                    all.add(lv.vertices.get(j));
+                }
+                i++;
+            }
+
+            n = all.size();
+            vertices = all.toArray(new Vertex[n]);
+            level = new int[n];
+            for( i=0; i<levels.length; i++ )
+                for (int v : levels[i])
+                    level[v] = i;
+
+            // the snapshot is ours, so its edge lists are sorted in place.
+            // the order is the ID order within a level
+            IntGraph<T> ig = new IntGraph<T>(all);
+            upStart = ig.bwdStart;
+            upAdj = ig.bwdAdj;
+            downStart = ig.fwdStart;
+            downAdj = ig.fwdAdj;
+            for( int v=0; v<n; v++ ) {
+                Arrays.sort(upAdj,upStart[v],upStart[v+1]);
+                Arrays.sort(downAdj,downStart[v],downStart[v+1]);
+            }
+            upConflict = new boolean[upAdj.length];
+            downConflict = new boolean[downAdj.length];
+
+            int conflicts = markConflicts();
+            if(LOGGER.isLoggable(FINE))
+                LOGGER.fine(conflicts+" segments cross long edges");
+        }
+
+        private int order(int v) {
+            return vertices[v].order;
+        }
+
+        private boolean isInner(int u, int v) {
+            return vertices[u].isDummy() && vertices[v].isDummy();
+        }
+
+        /**
+         * Marks type 1 conflicts, which are non-inner segments that cross inner segments.
+         *
+         * @return
+         *      the number of the conflicts.
+         */
+        private int markConflicts() {
+            int conflicts=0;
+            for( int i=0; i+1<levels.length; i++ ) {
+                int[] upper = levels[i];
+                int[] lower = levels[i+1];
+                int k0=0, l=0;
+                for( int l1=0; l1<lower.length; l1++ ) {
+                    int v = lower[l1];
+                    int inner = -1;   // upper end of the inner segment incident to v, if any
+                    for( int p=upStart[v]; p<upStart[v+1]; p++ )
+                        if(isInner(upAdj[p],v))
+                            inner = upAdj[p];
+
+                    if(l1==lower.length-1 || inner>=0) {
+                        int k1 = inner>=0 ? order(inner) : upper.length-1;
+                        for( ; l<=l1; l++ ) {
+                            int w = lower[l];
+                            for( int p=upStart[w]; p<upStart[w+1]; p++ ) {
+                                int u = upAdj[p];
+                                int k = order(u);
+                                if((k<k0 || k>k1) && !isInner(u,w)) {
+                                    upConflict[p] = true;
+                                    downConflict[Arrays.binarySearch(downAdj,downStart[u],downStart[u+1],w)] = true;
+                                    conflicts++;
+                                }
+                            }
+                        }
+                        k0 = k1;
+                    }
+                }
+            }
+            return conflicts;
+        }
+
+        /**
+         * Computes one of the four layouts.
+         *
+         * <p>
+         * To share the code, the layout aligns with the neighbours on the previous level and
+         * packs to the left, but the levels are visited bottom-up if !down, and each level
+         * is read from right to left if !left.
+         *
+         * @return
+         *      X coordinate of each vertex.
+         */
+        int[] place(boolean down, boolean left) {
+            int[] root = new int[n];
+            int[] align = new int[n];
+            for( int v=0; v<n; v++ )
+                root[v] = align[v] = v;
+
+            // vertical alignment
+            int[] start = down ? upStart : downStart;
+            int[] adj = down ? upAdj : downAdj;
+            boolean[] conflict = down ? upConflict : downConflict;
+            for( int i=1; i<levels.length; i++ ) {
+                int[] lv = levels[down ? i : levels.length-1-i];
+                int r = -1;   // position of the last aligned neighbour
+                for( int k=0; k<lv.length; k++ ) {
+                    int v = lv[left ? k : lv.length-1-k];
+                    int s = start[v];
+                    int d = start[v+1]-s;
+                    if(d==0)    continue;
+
+                    // lower median first, then upper median, in the scanning order
+                    for( int m=(d-1)/2; m<=d/2; m++ ) {
+                        if(align[v]!=v) break;
+                        int e = s+(left ? m : d-1-m);
+                        int u = adj[e];
+                        int pos = position(u,left);
+                        if(r<pos && !conflict[e]) {
+                            align[u] = v;
+                            root[v] = root[u];
+                            align[v] = root[v];
+                            r = pos;
+                        }
+                    }
+                }
+            }
+
+            // horizontal compaction, by the longest path on the graph of blocks
+            int[] predCount = new int[n];
+            int[] next = new int[n];      // right neighbour in the scanning order, or -1
+            Arrays.fill(next,-1);
+            for (int[] lv : levels)
+                for( int k=1; k<lv.length; k++ ) {
+                    int w = lv[left ? k-1 : lv.length-k];
+                    int v = lv[left ? k : lv.length-1-k];
+                    next[w] = v;
+                    predCount[root[v]]++;
+                }
+
+            // blocks of each root
+            int[] blockStart = new int[n+1];
+            for( int v=0; v<n; v++ )
+                blockStart[root[v]+1]++;
+            for( int v=0; v<n; v++ )
+                blockStart[v+1] += blockStart[v];
+            int[] members = new int[n];
+            int[] fill = blockStart.clone();
+            for( int v=0; v<n; v++ )
+                members[fill[root[v]]++] = v;
+
+            int[] x = new int[n];
+            int[] queue = new int[n];
+            int head=0, tail=0;
+            for( int v=0; v<n; v++ )
+                if(root[v]==v && predCount[v]==0)
+                    queue[tail++] = v;
+            while(head<tail) {
+                int b = queue[head++];
+                for( int i=blockStart[b]; i<blockStart[b+1]; i++ ) {
+                    int w = members[i];
+                    int v = next[w];
+                    if(v<0) continue;
+                    int rv = root[v];
+                    x[rv] = Math.max(x[rv], x[b]+separation(w,v));
+                    if(--predCount[rv]==0)
+                        queue[tail++] = rv;
+                }
+            }
+            assert tail==countRoots(root) : "the block graph must be acyclic";
+
+            int[] r = new int[n];
+            for( int v=0; v<n; v++ )
+                r[v] = left ? x[root[v]] : -x[root[v]];
+            return r;
+        }
+
+        private int position(int v, boolean left) {
+            return left ? order(v) : levels[level[v]].length-1-order(v);
+        }
+
+        private int countRoots(int[] root) {
+            int c=0;
+            for( int v=0; v<n; v++ )
+                if(root[v]==v)  c++;
+            return c;
+        }
+
+        private int separation(int w, int v) {
+            return vertices[w].size.width/2+X_GAP+vertices[v].size.width/2;
+        }
+
+        /**
+         * Aligns the four layouts to the narrowest one, and takes the average of the medians.
+         */
+        int[] balance(int[][] xs) {
+            int[] min = new int[4], max = new int[4];
+            int narrowest = 0;
+            for( int i=0; i<4; i++ ) {
+                min[i] = Integer.MAX_VALUE;
+                max[i] = Integer.MIN_VALUE;
+                for( int v=0; v<n; v++ ) {
+                    int w = vertices[v].size.width/2;
+                    min[i] = Math.min(min[i],xs[i][v]-w);
+                    max[i] = Math.max(max[i],xs[i][v]+w);
+                }
+                if(max[i]-min[i] < max[narrowest]-min[narrowest])
+                    narrowest = i;
+            }
+
+            // left layouts are aligned to the left end, right ones to the right end
+            for( int i=0; i<4; i++ ) {
+                int shift = i%2==0 ? min[narrowest]-min[i] : max[narrowest]-max[i];
+                for( int v=0; v<n; v++ )
+                    xs[i][v] += shift;
+            }
+
+            int[] x = new int[n];
+            int[] c = new int[4];
+            for( int v=0; v<n; v++ ) {
+                for( int i=0; i<4; i++ )
+                    c[i] = xs[i][v];
+                Arrays.sort(c);
+                x[v] = (c[1]+c[2])>>1;  // rounds down, which keeps the separation
+            }
+            return x;
+        }
+
+        /**
+         * Sets the positions, with the left end of the drawing at 0.
+         */
+        void store(int[] x) {
+            int min = Integer.MAX_VALUE;
+            for( int v=0; v<n; v++ )
+                min = Math.min(min,x[v]-vertices[v].size.width/2);
+
+            int y = 0;
+            for (int[] lv : levels) {
+                int ysz=0;      // compute the height
+                for (int v : lv) {
+                    Vertex<T> vx = vertices[v];
+                    ysz = Math.max(ysz,vx.size.height);
+                    vx.pos.x = x[v]-min;
+                    vx.pos.y = y;
+                }
+                y += ysz+Y_GAP;
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BrandesKopf.class.getName());
+}
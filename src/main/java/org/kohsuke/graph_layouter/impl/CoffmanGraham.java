@@ -0,0 +1,258 @@
+package org.kohsuke.graph_layouter.impl;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Reassigns levels so that no level gets wider than the given bound, in the way of the algorithm of
+ * Coffman and Graham [CG72].
+ *
+ * <p>
+ * Vertices are first labeled one by one, each time taking the vertex whose parents are all labeled
+ * and whose parent labels, sorted from the largest, are lexicographically the smallest.
+ * Levels are then filled from the side that vertices fall to, each time taking the vertex with
+ * the largest label among those whose children are all on the levels already filled.
+ * When no such vertex is left, or the level is full, the next level is started.
+ * Unlike the paper, a vertex isn't placed before the level it had, so that the compacted levels
+ * are kept where the bound allows, and a vertex pushed out of a full level only pushes its parents.
+ * This trades a few extra levels for narrower ones.
+ *
+ * <p>
+ * As vertices are placed as low as they can, each vertex with more parents than children is then
+ * moved up toward its parents, where there's room, which always reduces the dummy vertices.
+ *
+ * <p>
+ * If dummy vertices are counted, the width of a level includes the edges that pass through it.
+ * A level that already has more edges passing through it than the bound can't get any narrower
+ * by starting the next one, as the next one gets those edges, too, so it then takes
+ * all the vertices it can.
+ *
+ * <p>
+ * This works on an {@link IntGraph} of a DAG, except self loops, which are ignored.
+ * The transitive reduction of the paper is not done.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class CoffmanGraham<T> {
+    private final IntGraph<T> g;
+    private final int n;
+    private final int maxWidth;
+    private final boolean countDummies;
+
+    CoffmanGraham(IntGraph<T> g, int maxWidth, boolean countDummies) {
+        this.g = g;
+        this.n = g.size();
+        this.maxWidth = maxWidth;
+        this.countDummies = countDummies;
+    }
+
+    /**
+     * Moves vertices from their current {@link IntGraph#level} to bound the width.
+     *
+     * <p>
+     * The current levels need to be a valid layering, such as the one by
+     * {@link HierarchyBuilder#fall(java.util.Collection, EdgeDirection)}. Levels are filled from the side
+     * that vertices fell to, and a vertex isn't placed on a level before its current one,
+     * so the levels stay as they are unless some level is too wide.
+     *
+     * @param dir
+     *      The direction the current levels were built with.
+     * @return
+     *      the number of levels.
+     */
+    int run(EdgeDirection dir) {
+        final EdgeDirection rdir = dir.opposite();
+        final int[] adj = g.adj(dir);
+        final int[] radj = g.adj(rdir);
+        final int[] label = label(rdir);
+
+        // levels counted from the floor, before which each vertex can't be placed
+        int floor = dir==EdgeDirection.FORWARD ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        for( int v=0; v<n; v++ )
+            floor = dir==EdgeDirection.FORWARD ? Math.max(floor,g.level[v]) : Math.min(floor,g.level[v]);
+        int[] release = new int[n];
+        for( int v=0; v<n; v++ )
+            release[v] = dir.sign()*(floor-g.level[v]);
+
+        // number of children not placed yet, and the number of edges from the parents
+        int[] remaining = new int[n];
+        int[] parents = new int[n];
+        for( int v=0; v<n; v++ ) {
+            remaining[v] = degree(dir,adj,v);
+            parents[v] = degree(rdir,radj,v);
+        }
+
+        // vertices whose children are all placed, the earliest release and then the largest label first,
+        // encoded as release<<32|(n-1-label)
+        LongHeap ready = new LongHeap(n);
+        for( int v=0; v<n; v++ )
+            if(remaining[v]==0)
+                ready.add(key(release[v],label[v]));
+        int[] byLabel = new int[n];
+        for( int v=0; v<n; v++ )
+            byLabel[label[v]] = v;
+
+        int[] layer = new int[n];
+        int k=0, size=0;
+        int below=0;    // edges from vertices not placed yet to those below this level
+        int here=0;     // edges from vertices not placed yet to those on this level
+        for( int placed=0; placed<n; ) {
+            if(!ready.isEmpty() && (size==0 || (int)(ready.peek()>>>32)<=k && fits(size,below,vertexOf(ready.peek(),byLabel),dir,adj))) {
+                // the first vertex of a level is placed even before its release,
+                // so that no level is empty
+                int v = vertexOf(ready.poll(),byLabel);
+                layer[v] = k;
+                size++;
+                placed++;
+                below -= degree(dir,adj,v);
+                here += parents[v];
+                for( int e=g.start(rdir,v); e<g.end(rdir,v); e++ ) {
+                    int u = radj[e];
+                    if(u!=v && --remaining[u]==0)
+                        ready.add(key(Math.max(release[u],k+1),label[u]));
+                }
+            } else {
+                // start the next level
+                k++;
+                size=0;
+                below += here;
+                here=0;
+            }
+        }
+
+        int levels = n==0 ? 0 : k+1;
+        promote(layer,levels,parents,dir);
+
+        for( int v=0; v<n; v++ )
+            g.level[v] = floor-dir.sign()*layer[v];
+        return levels;
+    }
+
+    private long key(int release, int label) {
+        return (long)release<<32 | (n-1-label);
+    }
+
+    private int vertexOf(long key, int[] byLabel) {
+        return byLabel[n-1-(int)key];
+    }
+
+    /**
+     * Moves up each vertex that has more parents than children, as far as the parents and the width allow.
+     * Repeats until nothing moves, as moving a vertex makes room for its children.
+     */
+    private void promote(int[] layer, int levels, int[] parents, EdgeDirection dir) {
+        final EdgeDirection rdir = dir.opposite();
+        final int[] adj = g.adj(dir);
+        final int[] radj = g.adj(rdir);
+
+        int[] width = new int[levels];
+        for( int v=0; v<n; v++ )
+            width[layer[v]]++;
+
+        // from the top, so that parents move before their children
+        int[] order = new int[n];
+        int[] start = new int[levels+1];
+        for( int v=0; v<n; v++ )
+            start[levels-layer[v]]++;
+        for( int l=0; l<levels; l++ )
+            start[l+1] += start[l];
+        for( int v=0; v<n; v++ )
+            order[start[levels-1-layer[v]]++] = v;
+
+        boolean moved = true;
+        while(moved) {
+            moved = false;
+            for (int v : order) {
+                int children = degree(dir,adj,v);
+                if(parents[v]<=children)
+                    continue;
+                // with dummies counted, the level left behind gets the edges to the children
+                if(countDummies && children>1)
+                    continue;
+
+                int target = levels;
+                for( int e=g.start(rdir,v); e<g.end(rdir,v); e++ )
+                    if(radj[e]!=v)
+                        target = Math.min(target,layer[radj[e]]-1);
+                // the level just below the parents has the parents' edges going through it,
+                // which become one vertex, so it doesn't get wider with dummies counted
+                int to = target;
+                if(!countDummies)
+                    while(to>layer[v] && width[to]>=maxWidth)
+                        to--;
+                if(to>layer[v]) {
+                    width[layer[v]]--;
+                    width[to]++;
+                    layer[v] = to;
+                    moved = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Can v be placed on the level that already has the given number of vertices?
+     */
+    private boolean fits(int size, int below, int v, EdgeDirection dir, int[] adj) {
+        if(!countDummies)
+            return size<maxWidth;
+        // edges to the children of v pass through this level unless v is placed on it,
+        // so placing v makes the level wider only if v has no children
+        int children = degree(dir,adj,v);
+        return size+1+below-children<=maxWidth || children>0 || below>=maxWidth;
+    }
+
+    private int degree(EdgeDirection dir, int[] adj, int v) {
+        int d=0;
+        for( int e=g.start(dir,v); e<g.end(dir,v); e++ )
+            if(adj[e]!=v)
+                d++;
+        return d;
+    }
+
+    /**
+     * Labels vertices from 0 to n-1, so that parents in the given direction get smaller labels.
+     */
+    private int[] label(EdgeDirection pdir) {
+        final EdgeDirection cdir = pdir.opposite();
+        final int[] padj = g.adj(pdir);
+        final int[] cadj = g.adj(cdir);
+
+        // parent labels of each vertex, sorted from the largest.
+        // labels are given in the increasing order, so each one goes in front of the previous ones
+        final int[][] keys = new int[n][];
+        final int[] filled = new int[n];
+        for( int v=0; v<n; v++ )
+            keys[v] = new int[degree(pdir,padj,v)];
+
+        PriorityQueue<Integer> eligible = new PriorityQueue<Integer>(Math.max(n,1),new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int[] x = keys[a], y = keys[b];
+                for( int i=0; i<x.length && i<y.length; i++ )
+                    if(x[i]!=y[i])
+                        return x[i]<y[i] ? -1 : 1;
+                if(x.length!=y.length)
+                    return x.length<y.length ? -1 : 1;
+                return a.compareTo(b);
+            }
+        });
+        for( int v=0; v<n; v++ )
+            if(keys[v].length==0)
+                eligible.add(v);
+
+        int[] label = new int[n];
+        for( int l=0; l<n; l++ ) {
+            int v = eligible.poll();
+            label[v] = l;
+            for( int e=g.start(cdir,v); e<g.end(cdir,v); e++ ) {
+                int w = cadj[e];
+                if(w==v)    continue;
+                int[] key = keys[w];
+                key[key.length-1-filled[w]++] = l;
+                if(filled[w]==key.length)
+                    eligible.add(w);
+            }
+        }
+        return label;
+    }
+}
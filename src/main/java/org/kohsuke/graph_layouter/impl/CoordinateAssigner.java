@@ -0,0 +1,30 @@
+package org.kohsuke.graph_layouter.impl;
+
+import org.kohsuke.graph_layouter.Deadline;
+
+/**
+ * Abstraction of the algorithm that assigns (X,Y) coordinates to vertices,
+ * once the levels and the orderings within them are fixed.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see Coordinator
+ * @see BrandesKopf
+ */
+public interface CoordinateAssigner {
+    /**
+     * Sets {@link Vertex#pos} of all the vertices in the given map.
+     * Vertices on the same level get the same Y coordinate, and they are placed from left
+     * to right in their order without overlapping.
+     */
+    <T> void layout(LevelMap<T> lm);
+
+    /**
+     * Same as {@link #layout(LevelMap)}, except that the computation also stops early
+     * when the given deadline expires, in addition to any deadline this object is configured with.
+     * The positions are still valid then, just less optimized.
+     *
+     * @param deadline
+     *      If null, this is the same as {@link #layout(LevelMap)}.
+     */
+    <T> void layout(LevelMap<T> lm, Deadline deadline);
+}
@@ -1,14 +1,19 @@
 package org.kohsuke.graph_layouter.impl;
 
+import org.kohsuke.graph_layouter.Deadline;
+
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.FINER;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Set;
 import java.util.logging.*;
 
+import static org.kohsuke.graph_layouter.impl.Spacing.X_GAP;
+import static org.kohsuke.graph_layouter.impl.Spacing.Y_GAP;
+
 /**
  * Assigns (X,Y) coordinates based on STT81.
  *
@@ -22,211 +27,498 @@ import java.util.logging.*;
  * |  /|
  * L K J
  * </pre>
+ *
+ * <p>
+ * The state of each layout is kept apart from the configuration, so once configured,
+ * a {@link Coordinator} can lay out several graphs at once from multiple threads.
  * 
  * @author Kohsuke Kawaguchi
  */
-public class Coordinator {
+public class Coordinator implements CoordinateAssigner {
+    private Deadline deadline;
+
+    private double convergenceThreshold;
+
     /**
-     * Minimum space required between {@link Vertex}s.
+     * Sets when the computation is considered converged.
+     *
+     * <p>
+     * Pairs of down and up sweeps are repeated while the objective improves by more than this
+     * fraction of its value. If this is positive, the initial sweeps, which run regardless of
+     * the improvement, also end once a pair changes the objective by less than this fraction.
+     * In any case, the computation stops as soon as a down and an up sweep move nothing.
+     *
+     * @param convergenceThreshold
+     *      0, which is the default, to keep going while there's any improvement.
      */
-    private final int xGap = 10;
+    public void setConvergenceThreshold(double convergenceThreshold) {
+        if(convergenceThreshold<0)
+            throw new IllegalArgumentException("Negative threshold: "+convergenceThreshold);
+        this.convergenceThreshold = convergenceThreshold;
+    }
 
-    private final int yGap = 10;
+    /**
+     * Sets the deadline of the computation.
+     *
+     * <p>
+     * When the deadline expires, the computation stops and the best positions found so far
+     * are restored. Positions are valid after each step, so the result is always a valid layout.
+     *
+     * @param deadline
+     *      If null, which is the default, the computation runs until it stops improving.
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
 
     public <T> void layout( LevelMap<T> lm ) {
-        initial(lm);
+        layout(lm,null);
+    }
 
-        if(LOGGER.isLoggable(FINE)) {
-            LOGGER.fine("Initial cost="+objective(lm));
-            LOGGER.fine("Graph=\n"+lm);
-        }
+    public <T> void layout(LevelMap<T> lm, Deadline deadline) {
+        new Run<T>(lm,deadline).layout();
+    }
 
-        // at least run a certain number of times
-        LevelDirection dir = LevelDirection.DOWN;
-        for( int i=0; i<MAX_ITERATION; i++,dir=dir.opposite() ) {
-            move(dir, lm);
+    /**
+     * State of one {@link #layout(LevelMap, Deadline)} call, so that a {@link Coordinator} can lay out
+     * several graphs at once, from multiple threads.
+     */
+    private final class Run<T> {
+        private final LevelMap<T> lm;
+
+        /**
+         * Deadline of this call, which applies in addition to {@link Coordinator#deadline}.
+         */
+        private final Deadline deadline;
+
+        /**
+         * {@link Coordinator#objective(LevelMap)} of the current positions, kept up to date as vertices move.
+         */
+        private long cost;
+
+        /**
+         * {@link Level#n} of the last level, whose vertices are left out of the balance terms of the objective.
+         */
+        private final int lastLevel;
+
+        /**
+         * Set when {@link #moveTo(Vertex, int)} changes a position.
+         */
+        private boolean moved;
+
+        /**
+         * Snapshot of the graph being laid out, to walk the edges of moved vertices quickly.
+         */
+        private final IntGraph<T> graph;
+
+        /**
+         * Sum of X coordinates of {@link Vertex#backward} and {@link Vertex#forward} of each vertex,
+         * indexed by {@link Vertex#id}, to compute barycenters of moved vertices in constant time.
+         */
+        private final long[] sumBackward, sumForward;
+
+        /**
+         * Assigns the initial coordinates, and sets up {@link #cost} and the data to keep it up to date.
+         */
+        Run(LevelMap<T> lm, Deadline deadline) {
+            this.lm = lm;
+            this.deadline = deadline;
+            initial(lm);
+
+            List<Vertex<T>> all = new ArrayList<Vertex<T>>();
+            for (Level<T> lv : lm.levels())
+                all.addAll(lv.vertices);
+            IntGraph<T> g = new IntGraph<T>(all);
+            graph = g;
+
+            sumBackward = new long[g.size()];
+            sumForward = new long[g.size()];
+            for( int v=0; v<g.size(); v++ ) {
+                for( int e=g.bwdStart[v]; e<g.bwdStart[v+1]; e++ )
+                    sumBackward[v] += g.vertices[g.bwdAdj[e]].pos.x;
+                for( int e=g.fwdStart[v]; e<g.fwdStart[v+1]; e++ )
+                    sumForward[v] += g.vertices[g.fwdAdj[e]].pos.x;
+            }
+
+            lastLevel = lm.last().n;
+            cost = objective(lm);
+        }
 
+        void layout() {
             if(LOGGER.isLoggable(FINE)) {
-                LOGGER.fine("After "+i+"th iteration, cost="+objective(lm));
+                LOGGER.fine("Initial cost="+cost);
                 LOGGER.fine("Graph=\n"+lm);
             }
-        }
 
-        // repeat while we are still improving
-        while(true) {
-            long before = objective(lm);
-            move(LevelDirection.DOWN,lm);
-            move(LevelDirection.UP,lm);
-            long after = objective(lm);
+            // only needed to fall back to when the deadline expires
+            Best best = Coordinator.this.deadline!=null || deadline!=null ? new Best() : null;
+
+            // at least run a certain number of times
+            LevelDirection dir = LevelDirection.DOWN;
+            int idle=0;     // number of consecutive sweeps that moved nothing
+            long pairStart=cost;
+            for( int i=0; i<MAX_ITERATION; i++,dir=dir.opposite() ) {
+                if(dir==LevelDirection.DOWN)
+                    pairStart = cost;
+                moved = false;
+                move(dir);
+                assert cost==objective(lm);
+
+                if(LOGGER.isLoggable(FINE)) {
+                    LOGGER.fine("After "+i+"th iteration, cost="+cost);
+                    LOGGER.fine("Graph=\n"+lm);
+                }
 
-            if(LOGGER.isLoggable(FINE)) {
-                LOGGER.fine("cost: "+ before +"=>"+ after);
-                LOGGER.fine("Graph=\n"+lm);
-            }                
+                if(expired(best))
+                    return;
 
-            if(after>=before) {
-                return;
+                idle = moved ? 0 : idle+1;
+                if(idle==2) {
+                    // both directions are at a fixed point, so further sweeps won't change anything
+                    LOGGER.fine("Terminating as nothing moves");
+                    return;
+                }
+                if(dir==LevelDirection.UP && convergenceThreshold>0
+                && Math.abs(pairStart-cost)<=convergenceThreshold*pairStart)
+                    break;  // hardly changing. go on to the final improvements
+            }
+
+            // repeat while we are still improving
+            while(true) {
+                long before = cost;
+                moved = false;
+                move(LevelDirection.DOWN);
+                move(LevelDirection.UP);
+                long after = cost;
+                assert cost==objective(lm);
+
+                if(LOGGER.isLoggable(FINE)) {
+                    LOGGER.fine("cost: "+ before +"=>"+ after);
+                    LOGGER.fine("Graph=\n"+lm);
+                }                
+
+                if(expired(best))
+                    return;
+
+                if(!moved || before-after<=convergenceThreshold*before) {
+                    return;
+                }
             }
         }
-    }
 
-    /**
-     * Scans the whole levels.
-     */
-    private <T> void move(LevelDirection dir, LevelMap<T> lm) {
-        for(Level<T> lv=dir.first(lm); dir.next(lv)!=null; lv=dir.next(lv)) {
-            move(lv, dir.next(lv),dir);
+        /**
+         * Checks the deadline, and if it has expired, goes back to the best positions.
+         */
+        private boolean expired(Best best) {
+            if(best==null)  return false;   // no deadline
+            if(!isExpired()) {
+                best.update();
+                return false;
+            }
+            LOGGER.fine("Terminating as the deadline has expired");
+            best.restore();
+            return true;
         }
-    }
 
-    /**
-     * Moves the vertices in the 'next' level by considering the vertices in the 'fixed' level.
-     */
-    private <T> void move(Level<T> fixed, Level<T> next, LevelDirection dir) {
-        StringBuilder buf = new StringBuilder();    // log message
-        if(LOGGER.isLoggable(FINER))
-            buf.append("fixed=").append(fixed).append(',').append("next=").append(next);
+        private boolean isExpired() {
+            return Deadline.isExpired(Coordinator.this.deadline) || Deadline.isExpired(deadline);
+        }
 
+        /**
+         * Remembers the X coordinates with the smallest {@link #cost} seen so far.
+         */
+        private final class Best {
+            private long cost;
+            private final List<Vertex<T>> vertices = new ArrayList<Vertex<T>>();
+            private final int[] x;
+
+            Best() {
+                for (Level<T> lv : lm.levels())
+                    vertices.addAll(lv.vertices);
+                x = new int[vertices.size()];
+                save();
+            }
+
+            private void save() {
+                cost = Run.this.cost;
+                for( int i=0; i<x.length; i++ )
+                    x[i] = vertices.get(i).pos.x;
+            }
 
-        // use the barycenter
-        List<WeightedVertex<T>> plist = new ArrayList<WeightedVertex<T>>();
-        for (Vertex<T> v : next.vertices) {
-            plist.add(new WeightedVertex<T>(getPriority(v, dir, fixed),v));
+            void update() {
+                if(Run.this.cost<cost)
+                    save();
+            }
+
+            void restore() {
+                if(Run.this.cost>cost) {
+                    for( int i=0; i<x.length; i++ )
+                        vertices.get(i).pos.x = x[i];
+                    Run.this.cost = cost;
+                }
+            }
         }
 
-        // sort in the priority order from high to low
-        Collections.sort(plist, Collections.reverseOrder());
-
-        // consider moving vertex to its preferred position
-        for (WeightedVertex<T> v : plist) {
-            int bc = getBarycenter(v.v,dir);
-            int xpos = v.v.pos.x;
-
-            if(bc==NO_BARYCENTER)
-                continue;   // no guidance. leave it as is
-            if(bc==xpos)
-                continue;   // ideal
-
-            if(bc>xpos) {
-                // shift to right
-                int amount = Math.min( bc-xpos, findSlack(v.weight,
-                    reverse(next.vertices.subList(v.v.order,plist.size())),dir,fixed) );
-                shiftRight(next.vertices.subList(v.v.order, plist.size()),amount);
-            } else {
-                // shift to left
-                int amount = Math.min( xpos-bc, findSlack(v.weight,
-                    next.vertices.subList(0,v.v.order+1),dir,fixed));
-                shiftLeft(next.vertices.subList(0,v.v.order+1),amount);
+        /**
+         * Scans the whole levels.
+         */
+        private void move(LevelDirection dir) {
+            for(Level<T> lv=dir.first(lm); dir.next(lv)!=null; lv=dir.next(lv)) {
+                if(isExpired())
+                    return; // positions are valid after each level, so we can stop anywhere
+                move(lv, dir.next(lv),dir);
             }
         }
 
-        if(LOGGER.isLoggable(FINER)) {
-            buf.append("=>").append(next);
-            LOGGER.finer(buf.toString());
+        /**
+         * Moves the vertices in the 'next' level by considering the vertices in the 'fixed' level.
+         */
+        private void move(Level<T> fixed, Level<T> next, LevelDirection dir) {
+            StringBuilder buf = new StringBuilder();    // log message
+            if(LOGGER.isLoggable(FINER))
+                buf.append("fixed=").append(fixed).append(',').append("next=").append(next);
+
+            final int sz = next.vertices.size();
+
+            // use the barycenter
+            List<WeightedVertex<T>> plist = new ArrayList<WeightedVertex<T>>(sz);
+            int[] priorities = new int[sz];
+            for (Vertex<T> v : next.vertices) {
+                int p = getPriority(v, dir, fixed);
+                priorities[v.order] = p;
+                plist.add(new WeightedVertex<T>(p,v));
+            }
+            Blockers blockers = new Blockers(priorities);
+
+            // offset[i] is the space needed between the first vertex and the i-th vertex,
+            // so x-offset of a vertex tells how far it can go left if the vertices to the left are packed.
+            int[] offset = new int[sz];
+            for( int i=1; i<sz; i++ )
+                offset[i] = offset[i-1]+separation(next.vertices.get(i-1),next.vertices.get(i));
+
+            // sort in the priority order from high to low
+            Collections.sort(plist, Collections.reverseOrder());
+
+            // consider moving vertex to its preferred position
+            for (WeightedVertex<T> v : plist) {
+                int bc = getBarycenter(v.v,dir);
+                int xpos = v.v.pos.x;
+                int order = v.v.order;
+
+                if(bc==NO_BARYCENTER)
+                    continue;   // no guidance. leave it as is
+                if(bc==xpos)
+                    continue;   // ideal
+
+                // vertices with the same or higher priority are not pushed,
+                // so the slack is the free space up to the nearest such vertex.
+                if(bc>xpos) {
+                    // shift to right
+                    int b = blockers.first(order+1,(int)v.weight);
+                    int slack = b<0 ? Integer.MAX_VALUE : findSlack(next.vertices.get(b),offset[b],v.v,offset[order]);
+                    shiftRight(next.vertices.subList(order, sz),Math.min(bc-xpos,slack));
+                } else {
+                    // shift to left
+                    int b = blockers.last(order,(int)v.weight);
+                    int slack = b<0 ? Integer.MAX_VALUE : findSlack(v.v,offset[order],next.vertices.get(b),offset[b]);
+                    shiftLeft(next.vertices.subList(0,order+1),Math.min(xpos-bc,slack));
+                }
+            }
+
+            if(LOGGER.isLoggable(FINER)) {
+                buf.append("=>").append(next);
+                LOGGER.finer(buf.toString());
+            }
         }
-    }
 
-    /**
-     * Shifts vertices to right by the given width.
-     *
-     * <p>
-     * The way to visualize this is that you have:
-     * <pre>
-     * o o o o o o o o o o o
-     * </pre>
-     * ... and we are moving 'o's to the right.
-     * <pre>
-     *     ooooo o o o o o o
-     * </pre>
-     */
-    private <T> void shiftRight(List<Vertex<T>> vertices, int amount) {
-        if(vertices.isEmpty())  return; // nothing to do
+        /**
+         * Shifts vertices to right by the given width.
+         *
+         * <p>
+         * The way to visualize this is that you have:
+         * <pre>
+         * o o o o o o o o o o o
+         * </pre>
+         * ... and we are moving 'o's to the right.
+         * <pre>
+         *     ooooo o o o o o o
+         * </pre>
+         */
+        private void shiftRight(List<Vertex<T>> vertices, int amount) {
+            if(vertices.isEmpty())  return; // nothing to do
+
+            int sz = vertices.size();
+            int x = vertices.get(0).pos.x+amount;
+            for (int i=0; i< sz; i++) {
+                Vertex<T> v = vertices.get(i);
+
+                if(x<=v.pos.x) return;     // no need to shift any further
+
+                moveTo(v,x);  // shift but just enough
+
+                if(i+1<sz) {
+                    x += separation(v,vertices.get(i+1));
+                }
+            }
+        }
 
-        int sz = vertices.size();
-        int x = vertices.get(0).pos.x+amount;
-        for (int i=0; i< sz; i++) {
-            Vertex<T> v = vertices.get(i);
+        private void shiftLeft(List<Vertex<T>> vertices, int amount) {
+            if(vertices.isEmpty())  return; // nothing to do
 
-            if(x<=v.pos.x) return;     // no need to shift any further
+            int sz = vertices.size();
+            int x = vertices.get(sz-1).pos.x-amount;
+            for (int i=sz-1; i>=0; i--) {
+                Vertex<T> v = vertices.get(i);
 
-            v.pos.x = x;  // shift but just enough
+                if(x>=v.pos.x) return;     // no need to shift any further
 
-            if(i+1<sz) {
-                Vertex<T> w =vertices.get(i+1);
-                x += v.size.width/2+xGap+w.size.width/2;
+                moveTo(v,x);  // shift but just enough
+
+                if(i>0) {
+                    x -= separation(vertices.get(i-1),v);
+                }
             }
         }
+
+        /**
+         * Moves a vertex, and updates {@link #cost} by the change of the terms that involve it,
+         * which are its edges, its balance, and the balance of its neighbours.
+         */
+        private void moveTo(Vertex<T> v, int x) {
+            final IntGraph<T> g = graph;
+            final int id = g.id(v);
+            final int old = v.pos.x;
+            final int d = x-old;
+            long delta = 0;
+
+            for( int e=g.fwdStart[id]; e<g.fwdStart[id+1]; e++ ) {
+                int w = g.fwdAdj[e];
+                Vertex<T> wv = g.vertices[w];
+                int wx = wv.pos.x;
+                delta += pow(x-wx)-pow(old-wx);
+                int deg = g.bwdStart[w+1]-g.bwdStart[w];
+                if(wv.level!=lastLevel && deg>1)
+                    delta += pow(barycenter(sumBackward[w]+d,deg)-wx)-pow(barycenter(sumBackward[w],deg)-wx);
+                sumBackward[w] += d;
+            }
+            for( int e=g.bwdStart[id]; e<g.bwdStart[id+1]; e++ ) {
+                int w = g.bwdAdj[e];
+                int wx = g.vertices[w].pos.x;
+                delta += pow(x-wx)-pow(old-wx);
+                int deg = g.fwdStart[w+1]-g.fwdStart[w];
+                if(deg>1)
+                    delta += pow(barycenter(sumForward[w]+d,deg)-wx)-pow(barycenter(sumForward[w],deg)-wx);
+                sumForward[w] += d;
+            }
+
+            if(v.level!=lastLevel) {
+                int deg = g.bwdStart[id+1]-g.bwdStart[id];
+                if(deg>1)
+                    delta += pow(barycenter(sumBackward[id],deg)-x)-pow(barycenter(sumBackward[id],deg)-old);
+                deg = g.fwdStart[id+1]-g.fwdStart[id];
+                if(deg>1)
+                    delta += pow(barycenter(sumForward[id],deg)-x)-pow(barycenter(sumForward[id],deg)-old);
+            }
+
+            v.pos.x = x;
+            cost += delta;
+            moved = true;
+        }
     }
 
-    private <T> void shiftLeft(List<Vertex<T>> vertices, int amount) {
-        if(vertices.isEmpty())  return; // nothing to do
+    /**
+     * Finds vertices on a level whose priority is at least the given value,
+     * by a segment tree over the priorities, in O(log n) each.
+     */
+    private static final class Blockers {
+        /**
+         * Heap-ordered tree, where the leaves from {@code tree[leaves]} are the priorities,
+         * and each internal node is the maximum of its children.
+         */
+        private final int[] tree;
+        private final int leaves;
+
+        Blockers(int[] priorities) {
+            int m=1;
+            while(m<priorities.length)  m<<=1;
+            leaves = m;
+            tree = new int[2*m];
+            Arrays.fill(tree,m,2*m,Integer.MIN_VALUE);
+            System.arraycopy(priorities,0,tree,m,priorities.length);
+            for( int i=m-1; i>0; i-- )
+                tree[i] = Math.max(tree[2*i],tree[2*i+1]);
+        }
 
-        int sz = vertices.size();
-        int x = vertices.get(sz-1).pos.x-amount;
-        for (int i=sz-1; i>=0; i--) {
-            Vertex<T> v = vertices.get(i);
+        /**
+         * Index of the first vertex at or after 'from' with the priority at least p, or -1.
+         */
+        int first(int from, int p) {
+            return first(1,0,leaves,from,p);
+        }
 
-            if(x>=v.pos.x) return;     // no need to shift any further
+        private int first(int node, int lo, int hi, int from, int p) {
+            if(hi<=from || tree[node]<p)    return -1;
+            if(hi-lo==1)                    return lo;
+            int mid = (lo+hi)/2;
+            int r = first(2*node,lo,mid,from,p);
+            return r>=0 ? r : first(2*node+1,mid,hi,from,p);
+        }
 
-            v.pos.x = x;  // shift but just enough
+        /**
+         * Index of the last vertex before 'to' with the priority at least p, or -1.
+         */
+        int last(int to, int p) {
+            return last(1,0,leaves,to,p);
+        }
 
-            if(i>0) {
-                Vertex<T> w =vertices.get(i-1);
-                x -= v.size.width/2+xGap+w.size.width/2;
-            }
+        private int last(int node, int lo, int hi, int to, int p) {
+            if(to<=lo || tree[node]<p)  return -1;
+            if(hi-lo==1)                return lo;
+            int mid = (lo+hi)/2;
+            int r = last(2*node+1,mid,hi,to,p);
+            return r>=0 ? r : last(2*node,lo,mid,to,p);
         }
     }
 
     /**
-     * Computes the amount of slack we have in the given vertices from left to right.
+     * Same as {@link #getBarycenter(Vertex, LevelDirection)}, from the sum of X coordinates.
+     */
+    private int barycenter(long sum, int size) {
+        return (int)sum/size;
+    }
+
+    /**
+     * Computes the amount of slack between two vertices on the same level,
+     * which is how much they can get closer to each other.
      *
      * <p>
      * The way to visualize this is that you have:
      * <pre>
-     * |&lt;-- vertices -->|
      * o o o o o o o o o o o
      *
      * becomes
      *
      * o o o o o o ooooo     &lt;-- shifted
      * </pre>
-     * ... and we are trying to determine how much those 'o's can be shited to the left.
-     * This is subject to the constraint that only 'o's with lesser priority can be
-     * moved. 
+     * ... and we are trying to determine how much the last 'o' can be shifted to the left,
+     * when the 4th 'o' stays.
+     *
+     * @param rightOffset
+     *      Space needed between the first vertex of the level and 'right'.
+     * @param leftOffset
+     *      Same for 'left'.
      */
-    private <T> int findSlack(float weight, List<Vertex<T>> vertices, LevelDirection dir, Level<T> fixed) {
-        assert !vertices.isEmpty();
-        
-        final Vertex<T> tail = vertices.get(vertices.size()-1);
-
-        int width = Integer.MAX_VALUE;
-        Vertex<T> last = null;
-        for (Vertex<T> w : vertices) {
-            if(getPriority(w,dir,fixed)>=weight && w!=tail) {
-                width = 0; // can't move this node
-            } else {
-                if(last!=null) {
-                    width = Math.max(width,width+findSlack(last,w));
-                }
-            }
-
-            last = w;
-        }
-
-        return width;
+    private <T> int findSlack(Vertex<T> right, int rightOffset, Vertex<T> left, int leftOffset) {
+        int dist = (right.pos.x-rightOffset)-(left.pos.x-leftOffset);
+        assert dist>=0;
+        return dist;
     }
 
     /**
-     * Finds the slack between two adjacent nodes (v,w)
+     * Space required between the centers of two adjacent vertices.
      */
-    private <T> int findSlack(Vertex<T> w, Vertex<T> v) {
-        assert Math.abs(v.order-w.order)==1; // must be adjacent
-
-        int dist = Math.abs(w.pos.x-v.pos.x);  // current distance
-        // subtract the required space, and we get the slack between (last,w)
-        dist -= v.size.width/2 + w.size.width/2 + xGap;
-        assert dist>=0;
-        return dist;
+    private <T> int separation(Vertex<T> v, Vertex<T> w) {
+        return v.size.width/2+X_GAP+w.size.width/2;
     }
 
     /**
@@ -293,8 +585,8 @@ public class Coordinator {
         return closeness+balanced;  // 1:1 mix
     }
 
-    private int pow(int x) {
-        return x*x;
+    private long pow(int x) {
+        return (long)x*x;   // wide levels are wider than the square root of int
     }
 
     /**
@@ -311,30 +603,13 @@ public class Coordinator {
                 v.pos.y = y;
                 v.pos.x = x + v.size.width/2;
 
-                x+= v.size.width+xGap;
+                x+= v.size.width+X_GAP;
             }
 
-            y += ysz+yGap;
+            y += ysz+Y_GAP;
         }
     }
 
-    /**
-     * Creates a view of the list that returns items in the reverse order.
-     */
-    private <T> List<T> reverse(final List<T> l) {
-        return new AbstractList<T>() {
-            final int sz = l.size();
-
-            public T get(int index) {
-                return l.get(sz-index-1);
-            }
-
-            public int size() {
-                return sz;
-            }
-        };
-    }
-
     private static final int MAX_ITERATION = 17;
     private static final int NO_BARYCENTER = Integer.MIN_VALUE;
 
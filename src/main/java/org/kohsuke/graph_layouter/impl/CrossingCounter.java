@@ -0,0 +1,100 @@
+package org.kohsuke.graph_layouter.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts the number of edge crossings between two adjacent levels in O(E log V)
+ * by using the accumulator tree of [BJM04].
+ *
+ * <p>
+ * Edges are sorted lexicographically by the orders of their end points on the 'from'
+ * level and then on the 'to' level. Two edges cross if and only if their 'to' orders
+ * are inverted in this sequence, so the number of crossings is the number of inversions,
+ * which the accumulator tree counts in a single pass.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class CrossingCounter {
+    private CrossingCounter() {}
+
+    /**
+     * Counts the number of edge crossings between two levels.
+     *
+     * @param from
+     *      Vertices of the 'from' level, in the order of {@link Vertex#order}.
+     * @param toSize
+     *      Number of vertices on the 'to' level.
+     * @param dir
+     *      The direction from 'from' to 'to'.
+     */
+    static <T> int count(List<Vertex<T>> from, int toSize, EdgeDirection dir) {
+        return count(from,toSize,dir,null,null);
+    }
+
+    /**
+     * Counts the number of edge crossings between two levels, by assuming that
+     * the positions of v and w on the 'to' level are swapped.
+     *
+     * @param v
+     *      null, or a vertex on the 'to' level.
+     * @param w
+     *      null, or a vertex on the 'to' level.
+     */
+    static <T> int count(List<Vertex<T>> from, int toSize, EdgeDirection dir, Vertex<T> v, Vertex<T> w) {
+        int e=0;
+        for (Vertex<T> a : from)
+            e += dir.getEdges(a).size();
+        if(e<2) return 0;   // no pair of edges to cross
+
+        // 'to' orders of all the edges, sorted by the 'from' order first, then the 'to' order
+        int[] south = new int[e];
+        int k=0;
+        for (Vertex<T> a : from) {
+            assert from.get(a.order)==a;
+            int start=k;
+            for (Vertex<T> c : dir.getEdges(a)) {
+                // swap
+                if(c==v)    c=w;
+                else
+                if(c==w)    c=v;
+                south[k++] = c.order;
+            }
+            if(k-start>1)
+                Arrays.sort(south,start,k);
+        }
+        assert k==e;
+
+        return countInversions(south,e,toSize);
+    }
+
+    /**
+     * Counts pairs (i,j) such that i&lt;j and seq[i]&gt;seq[j].
+     *
+     * @param n
+     *      All the values in the sequence must be in [0,n).
+     */
+    static int countInversions(int[] seq, int len, int n) {
+        // leaves of the accumulator tree start at this index
+        int first=1;
+        while(first<n)
+            first<<=1;
+        int[] tree = new int[2*first-1];
+        first--;
+
+        int crossing=0;
+        for( int i=0; i<len; i++ ) {
+            assert 0<=seq[i] && seq[i]<n;
+            int index = seq[i]+first;
+            tree[index]++;
+            while(index>0) {
+                // if we are the left child, every value accumulated on the right sibling is bigger
+                if(index%2==1)
+                    crossing += tree[index+1];
+                index = (index-1)/2;
+                tree[index]++;
+            }
+        }
+        return crossing;
+    }
+}
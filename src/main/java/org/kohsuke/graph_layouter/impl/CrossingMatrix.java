@@ -0,0 +1,163 @@
+package org.kohsuke.graph_layouter.impl;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Crossing numbers of adjacent vertex pairs on a {@link Level}.
+ *
+ * <p>
+ * For two vertices u and v on the same level, the crossing number c(u,v) is the number
+ * of crossings among edges incident to u and v when u is placed left of v. Swapping
+ * two adjacent vertices u and v changes the number of crossings of the level by
+ * c(v,u)-c(u,v), so keeping these numbers for adjacent pairs lets us evaluate
+ * a swap without recounting the whole level.
+ *
+ * <p>
+ * The orders of the vertices on the adjacent levels are captured when this object is created,
+ * so this object must be discarded once those levels are reordered.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class CrossingMatrix<T> {
+    private final Level<T> level;
+
+    /**
+     * Sorted orders of the neighbours on the previous and the next level,
+     * indexed by the current order of the vertex.
+     */
+    private final int[][] up, down;
+
+    /**
+     * Crossing numbers of the adjacent pair at (i,i+1), split into the crossings with the
+     * previous level and the next level. 'lr' is c(vertices[i],vertices[i+1]),
+     * and 'rl' is c(vertices[i+1],vertices[i]).
+     */
+    private final int[] upLR, upRL, downLR, downRL;
+
+    CrossingMatrix(Level<T> level) {
+        this.level = level;
+
+        int sz = level.vertices.size();
+        up = new int[sz][];
+        down = new int[sz][];
+        for( int i=0; i<sz; i++ ) {
+            Vertex<T> v = level.vertices.get(i);
+            assert v.order==i;
+            up[i] = sortedOrders(v.backward);
+            down[i] = sortedOrders(v.forward);
+        }
+
+        int pairs = Math.max(0,sz-1);
+        upLR = new int[pairs];
+        upRL = new int[pairs];
+        downLR = new int[pairs];
+        downRL = new int[pairs];
+        for( int i=0; i<pairs; i++ )
+            update(i);
+    }
+
+    /**
+     * Change in the number of crossings with the previous level
+     * if the vertices at i and i+1 are swapped.
+     */
+    int upDelta(int i) {
+        return upRL[i]-upLR[i];
+    }
+
+    /**
+     * Change in the number of crossings with the next level
+     * if the vertices at i and i+1 are swapped.
+     */
+    int downDelta(int i) {
+        return downRL[i]-downLR[i];
+    }
+
+    /**
+     * Change in the number of crossings between this level and its two adjacent levels
+     * if the vertices at i and i+1 are swapped.
+     */
+    int swapDelta(int i) {
+        return upDelta(i)+downDelta(i);
+    }
+
+    /**
+     * Swaps the vertices at i and i+1 on the level, and updates the crossing numbers locally.
+     */
+    void swap(int i) {
+        level.swap(level.vertices.get(i), level.vertices.get(i+1), upDelta(i), downDelta(i));
+
+        swap(up,i);
+        swap(down,i);
+        swap(upLR,upRL,i);
+        swap(downLR,downRL,i);
+        // the pairs on both sides now have a new vertex
+        if(i>0)             update(i-1);
+        if(i+2<up.length)   update(i+1);
+    }
+
+    /**
+     * Checks the crossing numbers of the pair at (i,i+1) against the edges of the vertices there.
+     * Only meant for assertions.
+     */
+    boolean isConsistent(int i) {
+        Vertex<T> v = level.vertices.get(i);
+        Vertex<T> w = level.vertices.get(i+1);
+        int[] vu = sortedOrders(v.backward), wu = sortedOrders(w.backward);
+        int[] vd = sortedOrders(v.forward),  wd = sortedOrders(w.forward);
+        return upDelta(i)==crossing(wu,vu)-crossing(vu,wu)
+            && downDelta(i)==crossing(wd,vd)-crossing(vd,wd);
+    }
+
+    /**
+     * Recomputes the crossing numbers of the pair at (i,i+1).
+     */
+    private void update(int i) {
+        upLR[i] = crossing(up[i],up[i+1]);
+        upRL[i] = crossing(up[i+1],up[i]);
+        downLR[i] = crossing(down[i],down[i+1]);
+        downRL[i] = crossing(down[i+1],down[i]);
+    }
+
+    /**
+     * Counts the crossings between the edges to the neighbours 'l' of the left vertex
+     * and the edges to the neighbours 'r' of the right vertex, in O(|l|+|r|).
+     *
+     * @param l
+     *      Sorted orders of the neighbours of the left vertex.
+     * @param r
+     *      Sorted orders of the neighbours of the right vertex.
+     */
+    static int crossing(int[] l, int[] r) {
+        int crossing=0;
+        int j=0;
+        for (int a : l) {
+            // every neighbour of the right vertex that comes strictly before 'a' crosses
+            while(j<r.length && r[j]<a)
+                j++;
+            crossing += j;
+        }
+        return crossing;
+    }
+
+    static <T> int[] sortedOrders(Set<Vertex<T>> vertices) {
+        int[] r = new int[vertices.size()];
+        int i=0;
+        for (Vertex<T> v : vertices)
+            r[i++] = v.order;
+        Arrays.sort(r);
+        return r;
+    }
+
+    private static void swap(int[][] a, int i) {
+        int[] t = a[i];
+        a[i] = a[i+1];
+        a[i+1] = t;
+    }
+
+    private static void swap(int[] lr, int[] rl, int i) {
+        int t = lr[i];
+        lr[i] = rl[i];
+        rl[i] = t;
+    }
+}
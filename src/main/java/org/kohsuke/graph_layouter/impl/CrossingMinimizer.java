@@ -0,0 +1,15 @@
+package org.kohsuke.graph_layouter.impl;
+
+/**
+ * Abstraction of the algorithm that orders vertices within each level to reduce edge crossings.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see OrderingHeuristic
+ */
+public interface CrossingMinimizer {
+    /**
+     * Reorders vertices of the levels in the given map.
+     * The initial ordering is taken as the starting point.
+     */
+    <T> void layout(LevelMap<T> lm);
+}
@@ -0,0 +1,26 @@
+package org.kohsuke.graph_layouter.impl;
+
+import java.util.Collection;
+
+/**
+ * Abstraction of the algorithm that makes a graph acyclic by reversing some of its edges,
+ * before {@link HierarchyBuilder} assigns levels.
+ *
+ * <p>
+ * Each reversed edge is drawn against the flow of the rest of the graph, usually as a long edge,
+ * so the fewer the better.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see GreedyCycleRemover
+ * @see HierarchyBuilder#setCycleRemover(CycleRemover)
+ */
+public interface CycleRemover {
+    /**
+     * Reverses edges of the given graph, by updating {@link Vertex#forward} and {@link Vertex#backward},
+     * until it has no cycles. Self loops are left as they are.
+     *
+     * @return
+     *      the number of edges reversed.
+     */
+    <T> int removeCycles(Collection<Vertex<T>> graph);
+}
@@ -1,7 +1,6 @@
 package org.kohsuke.graph_layouter.impl;
 
 import java.util.Collection;
-import java.util.Stack;
 
 /**
  * Base class to perform DFS search.
@@ -23,50 +22,22 @@ public abstract class Dfs<T> {
 
     /**
      * Runs a DFS search by starting from given set of vertices.
+     *
+     * <p>
+     * The search runs on an {@link IntGraph} snapshot by {@link IntGraph#dfs(EdgeDirection, IntGraph.Visitor)},
+     * so it works on arbitrarily deep graphs. All the vertices reachable from the given ones must be
+     * in the collection, and the callbacks see the graph as of when the search started.
      */
     public final void run(Collection<Vertex<T>> vertices) {
-        abstract class Task {
-            abstract void perform();
-        }
-
-        final Stack<Task> s = new Stack<Task>();
-        final Object marker = new Object();
-
-        class In extends Task {
-            final Vertex<T> v;
-
-            public In(Vertex<T> v) {
-                this.v = v;
+        final IntGraph<T> g = new IntGraph<T>(vertices);
+        g.dfs(dir,new IntGraph.Visitor() {
+            public void in(int v) {
+                Dfs.this.in(g.vertices[v]);
             }
-
-            void perform() {
-                if(v.dfsMarker==marker)
-                    return; // already visited
-                v.dfsMarker=marker;
-
-                in(v);
-
-                // schedule 'out'
-                s.push(new Task() {
-                    void perform() {
-                        out(v);
-                    }
-                });
-
-                // schedule visits
-                for (Vertex<T> w : dir.getEdges(v)) {
-                    if(w.dfsMarker!=marker)
-                        s.push(new In(w));
-                }
+            public void out(int v) {
+                Dfs.this.out(g.vertices[v]);
             }
-        }
-
-        for (Vertex<T> v : vertices) {// visit vertices in the order given
-            s.push(new In(v));
-
-            while(!s.isEmpty())
-                s.pop().perform();
-        }
+        });
     }
 
     /**
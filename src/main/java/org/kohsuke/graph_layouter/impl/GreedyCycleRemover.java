@@ -0,0 +1,175 @@
+package org.kohsuke.graph_layouter.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Breaks cycles by the greedy heuristic of Eades, Lin and Smyth [ELS93],
+ * in time linear to the size of the graph.
+ *
+ * <p>
+ * Vertices are removed from the graph one by one, and lined up in the order that edges
+ * should flow. Sinks are placed at the end of the line and sources at the beginning.
+ * When there are neither, the vertex with the largest outdegree minus indegree is placed
+ * at the beginning, so that most of its remaining edges go forward. Edges that go backward
+ * in the resulting line are reversed, which are at most half of the edges.
+ *
+ * <p>
+ * Vertices are kept in buckets by their outdegree minus indegree, which are doubly linked lists
+ * over int arrays, so that a vertex can be moved to another bucket in constant time
+ * when its neighbour is removed.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class GreedyCycleRemover implements CycleRemover {
+    public <T> int removeCycles(Collection<Vertex<T>> graph) {
+        IntGraph<T> g = new IntGraph<T>(graph);
+        int[] line = new Sequencer(g).run();
+
+        int[] pos = new int[line.length];
+        for( int i=0; i<line.length; i++ )
+            pos[line[i]] = i;
+
+        // the edges in 'g' are a snapshot, so we can change the graph as we go
+        int r=0;
+        for( int v=0; v<g.size(); v++ ) {
+            for( int e=g.fwdStart[v]; e<g.fwdStart[v+1]; e++ ) {
+                int w = g.fwdAdj[e];
+                if(pos[w]<pos[v]) {
+                    Vertex<T> vv = g.vertices[v];
+                    Vertex<T> wv = g.vertices[w];
+                    vv.removeEdge(wv);
+                    wv.addEdge(vv);
+                    r++;
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Computes the line of vertices.
+     */
+    private static final class Sequencer {
+        private final IntGraph<?> g;
+        private final int n;
+        /**
+         * Degrees among the vertices not yet removed, not counting self loops.
+         */
+        private final int[] out, in;
+        private final boolean[] removed;
+
+        /**
+         * Bucket lists. {@code head[b]} is the first vertex in the bucket b, or -1,
+         * and {@code next}/{@code prev} link vertices in the same bucket.
+         * The bucket of a vertex is {@link #SINKS}, {@link #SOURCES}, or the outdegree minus indegree
+         * shifted by {@link #offset}.
+         */
+        private final int[] head, next, prev, bucket;
+        private final int offset;
+        /**
+         * No bucket above this index other than {@link #SINKS} and {@link #SOURCES} has a vertex.
+         */
+        private int max;
+
+        private static final int SINKS = 0;
+        private static final int SOURCES = 1;
+
+        Sequencer(IntGraph<?> g) {
+            this.g = g;
+            this.n = g.size();
+            out = new int[n];
+            in = new int[n];
+            removed = new boolean[n];
+            for( int v=0; v<n; v++ )
+                for( int e=g.fwdStart[v]; e<g.fwdStart[v+1]; e++ ) {
+                    int w = g.fwdAdj[e];
+                    if(w!=v) {
+                        out[v]++;
+                        in[w]++;
+                    }
+                }
+
+            offset = n+1;     // degrees are less than n, so buckets are [2,2n]
+            head = new int[2*n+2];
+            Arrays.fill(head,-1);
+            next = new int[n];
+            prev = new int[n];
+            bucket = new int[n];
+            // in the reverse order, so that the lists pop in the ID order
+            for( int v=n-1; v>=0; v-- )
+                add(v);
+        }
+
+        private int bucketOf(int v) {
+            if(out[v]==0)   return SINKS;
+            if(in[v]==0)    return SOURCES;
+            return out[v]-in[v]+offset;
+        }
+
+        private void add(int v) {
+            int b = bucketOf(v);
+            bucket[v] = b;
+            prev[v] = -1;
+            next[v] = head[b];
+            if(head[b]>=0)
+                prev[head[b]] = v;
+            head[b] = v;
+            if(b>SOURCES)
+                max = Math.max(max,b);
+        }
+
+        private void unlink(int v) {
+            int b = bucket[v];
+            if(prev[v]>=0)  next[prev[v]] = next[v];
+            else            head[b] = next[v];
+            if(next[v]>=0)
+                prev[next[v]] = prev[v];
+        }
+
+        /**
+         * Takes the vertex out of the graph, and moves its neighbours to their new buckets.
+         */
+        private void remove(int v) {
+            unlink(v);
+            removed[v] = true;
+            for( int e=g.fwdStart[v]; e<g.fwdStart[v+1]; e++ ) {
+                int w = g.fwdAdj[e];
+                if(w==v || removed[w])  continue;
+                unlink(w);
+                in[w]--;
+                add(w);
+            }
+            for( int e=g.bwdStart[v]; e<g.bwdStart[v+1]; e++ ) {
+                int w = g.bwdAdj[e];
+                if(w==v || removed[w])  continue;
+                unlink(w);
+                out[w]--;
+                add(w);
+            }
+        }
+
+        int[] run() {
+            int[] line = new int[n];
+            int left=0, right=n-1;
+            while(left<=right) {
+                if(head[SINKS]>=0) {
+                    int v = head[SINKS];
+                    line[right--] = v;
+                    remove(v);
+                } else if(head[SOURCES]>=0) {
+                    int v = head[SOURCES];
+                    line[left++] = v;
+                    remove(v);
+                } else {
+                    while(head[max]<0)
+                        max--;
+                    int v = head[max];
+                    line[left++] = v;
+                    remove(v);
+                }
+            }
+            return line;
+        }
+    }
+}
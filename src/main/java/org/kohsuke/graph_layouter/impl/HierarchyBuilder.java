@@ -1,8 +1,12 @@
 package org.kohsuke.graph_layouter.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
 
 /**
  * Decomposes DAG to hierarchical graph, where vertices are assigned levels,
@@ -24,6 +28,60 @@ import java.util.List;
  * @author Kohsuke Kawaguchi
  */
 public class HierarchyBuilder {
+    private boolean networkSimplex;
+
+    private CycleRemover cycleRemover;
+
+    private int maxWidth;
+    private boolean countDummies;
+
+    /**
+     * Sets how cycles are broken before the levels are assigned.
+     *
+     * @param cycleRemover
+     *      If null, which is the default, {@link #topologicalSort(Collection, EdgeDirection)}
+     *      reverses edges that go against the DFS order.
+     */
+    public void setCycleRemover(CycleRemover cycleRemover) {
+        this.cycleRemover = cycleRemover;
+    }
+
+    /**
+     * Chooses how levels are compacted after the topological sort.
+     *
+     * @param networkSimplex
+     *      If true, levels are assigned by the network simplex method, which minimizes
+     *      the total span of edges and hence the number of dummy vertices.
+     *      If false, which is the default, vertices {@link #fall(Collection, EdgeDirection) fall}
+     *      in clusters.
+     */
+    public void setNetworkSimplex(boolean networkSimplex) {
+        this.networkSimplex = networkSimplex;
+    }
+
+    /**
+     * Bounds the number of vertices on each level.
+     *
+     * <p>
+     * The longest path layering puts all the sources (or sinks) on one level, however many there are,
+     * and the later phases take time quadratic to the width of a level. With the bound, vertices on
+     * a level that is too wide are moved to the next levels by {@link CoffmanGraham}, which uses more
+     * levels to keep each one narrower.
+     *
+     * @param maxWidth
+     *      The maximum number of vertices on a level, or 0 for no bound, which is the default.
+     * @param countDummies
+     *      If true, the edges that pass through a level count toward its width,
+     *      as they become dummy vertices. The bound is then met where it can be,
+     *      as a level can have more edges passing through it than the bound.
+     */
+    public void setMaxWidth(int maxWidth, boolean countDummies) {
+        if(maxWidth<0)
+            throw new IllegalArgumentException("Negative width: "+maxWidth);
+        this.maxWidth = maxWidth;
+        this.countDummies = countDummies;
+    }
+
     /**
      * Decomposes DAG to levels.
      *
@@ -32,8 +90,41 @@ public class HierarchyBuilder {
      *      on the "floor". And otherwise nodes tend to be pulled up on the ceiling.
      */
     public <T> void assignLevels(Collection<Vertex<T>> graph, EdgeDirection dir) {
+        if(cycleRemover!=null) {
+            int r = cycleRemover.removeCycles(graph);
+            if(LOGGER.isLoggable(FINE))
+                LOGGER.fine(cycleRemover.getClass().getSimpleName()+" reversed "+r+" edges");
+        }
         topologicalSort(graph,dir);
-        fall(graph,dir);
+        if(networkSimplex) {
+            int before = countDummies(graph);
+            IntGraph<T> g = new IntGraph<T>(graph);
+            int pivots = new NetworkSimplex<T>(g).run(dir);
+            g.storeLevels();
+            if(LOGGER.isLoggable(FINE))
+                LOGGER.fine("Network simplex made "+pivots+" pivots: dummies="+before+"=>"+countDummies(graph));
+        } else {
+            fall(graph,dir);
+        }
+        if(maxWidth>0) {
+            int before = countDummies(graph);
+            IntGraph<T> g = new IntGraph<T>(graph);
+            int levels = new CoffmanGraham<T>(g,maxWidth,countDummies).run(dir);
+            g.storeLevels();
+            if(LOGGER.isLoggable(FINE))
+                LOGGER.fine("Bounded the width to "+maxWidth+" in "+levels+" levels: dummies="+before+"=>"+countDummies(graph));
+        }
+    }
+
+    /**
+     * Counts the dummy vertices that {@link ProperTransformer} would insert with the current levels.
+     */
+    public static <T> int countDummies(Collection<Vertex<T>> graph) {
+        int r=0;
+        for (Vertex<T> v : graph)
+            for (Vertex<T> w : v.forward)
+                r += Math.abs(w.level-v.level)-1;
+        return r;
     }
 
     /**
@@ -50,36 +141,43 @@ public class HierarchyBuilder {
      *      If dir==BACKWARD, topoOrder is sorted from source to sink.
      */
     public <T> List<Vertex<T>> topologicalSort(Collection<Vertex<T>> graph, EdgeDirection dir) {
+        IntGraph<T> g = new IntGraph<T>(graph);
+
         // Receives vertices in the reverse topological order,
         // where (v,w) \in E =>  indexOf(v) > indexOf(w)
-        final List<Vertex<T>> topoOrder = new ArrayList<Vertex<T>>(graph.size());
-        new Dfs<T>(dir) {
-            protected void out(Vertex<T> v) {
-                topoOrder.add(v);
-            }
-        }.run(graph);
+        final int[] topoOrder = g.postOrder(dir);
 
         // assigns levels
         EdgeDirection rdir = dir.opposite();
-        for( int i=graph.size()-1; i>=0; i-- ) {
-            Vertex<T> v = topoOrder.get(i);
+        int[] radj = g.adj(rdir);
+        for( int i=topoOrder.length-1; i>=0; i-- ) {
+            int v = topoOrder[i];
             int level = 0;
-            for (Vertex<T> w : rdir.getEdges(v)) {
+            for( int e=g.start(rdir,v); e<g.end(rdir,v); e++ ) {
+                int w = radj[e];
                 switch(dir) {
                 case FORWARD:
-                    level = Math.max(level,w.level+1);
+                    level = Math.max(level,g.level[w]+1);
                     break;
                 case BACKWARD:
-                    level = Math.min(level,w.level-1);
+                    level = Math.min(level,g.level[w]-1);
                     break;
                 }
             }
-            v.level = level;
+            g.level[v] = level;
         }
+        g.storeLevels();
 
-        // break cycles by reversing edges
-        for (Vertex<T> v : topoOrder) {
-            for (Vertex<T> w : new ArrayList<Vertex<T>>(dir.getEdges(v))) {// make a copy because we might change this
+        // break cycles by reversing edges.
+        // the edges in 'g' are a snapshot, so we can change the graph as we go
+        int[] adj = g.adj(dir);
+        int reversed=0;
+        List<Vertex<T>> r = new ArrayList<Vertex<T>>(topoOrder.length);
+        for (int vi : topoOrder) {
+            Vertex<T> v = g.vertices[vi];
+            r.add(v);
+            for( int e=g.start(dir,vi); e<g.end(dir,vi); e++ ) {
+                Vertex<T> w = g.vertices[adj[e]];
                 switch (dir) {
                 case FORWARD:
                     if (v.level>w.level) {
@@ -87,6 +185,7 @@ public class HierarchyBuilder {
                         w.backward.remove(v);
                         v.backward.add(w);
                         w.forward.add(v);
+                        reversed++;
                     }
                     break;
                 case BACKWARD:
@@ -95,19 +194,34 @@ public class HierarchyBuilder {
                         v.backward.remove(w);
                         w.backward.add(v);
                         v.forward.add(w);
+                        reversed++;
                     }
                     break;
                 }
             }
         }
+        if(reversed>0 && LOGGER.isLoggable(FINE))
+            LOGGER.fine("Reversed "+reversed+" edges to break cycles");
 
-
-        return topoOrder;
+        return r;
     }
 
     /**
      * Performs clustering and move vertices to closer levels.
      *
+     * <p>
+     * Vertices connected by edges that span just one level form a cluster, and each cluster falls
+     * as a whole until one of its edges to another cluster spans one level, at which point the two
+     * clusters merge. This repeats until nothing falls.
+     *
+     * <p>
+     * Rather than letting all the clusters fall by one step at a time, each round lets every cluster
+     * land at once: clusters that have no edge to fall along stay, and the others fall by their
+     * shortest distance to those, where the distance of an edge is the number of levels it can shrink.
+     * Each round is O((V+E)log(V)) and merges every cluster that fell, so there are only a few rounds.
+     * This gives the same levels as the step-by-step version, except that clusters that only chase
+     * each other, with which the step-by-step version never ended, land on the farthest one of them.
+     *
      * @param dir
      *      If {@link EdgeDirection#FORWARD}, then the algorithm will "push down"
      *      nodes to higher levels (works with {@link #topologicalSort(Collection,EdgeDirection)}
@@ -116,64 +230,188 @@ public class HierarchyBuilder {
      *      Otherwise the algorithm will pull up.
      */
     public <T> void fall(Collection<Vertex<T>> graph, EdgeDirection dir) {
-        boolean hasDrop;
-        do {// drops might happen in multiple levels. so repeat until everything settles.
-            assert nothingInCluster(graph);
-
-            // form a cluster set
-            for (Vertex v : graph) {
-                if(v.cluster!=null)
-                    continue;   // already belongs to a cluster
-                new Cluster().add(v);
+        IntGraph<T> g = new IntGraph<T>(graph);
+        int rounds=0;
+        while(new Landing(g,dir).run())
+            rounds++;
+        g.storeLevels();
+        if(LOGGER.isLoggable(FINE))
+            LOGGER.fine("Fell in "+rounds+" rounds");
+    }
+
+    /**
+     * One round of {@link HierarchyBuilder#fall(Collection, EdgeDirection)}.
+     */
+    private static final class Landing {
+        private final IntGraph<?> g;
+        private final EdgeDirection dir;
+        private final int n;
+        /**
+         * Union-find forest over vertices, then the cluster index of each vertex.
+         */
+        private final int[] cluster;
+        private int clusters;
+
+        Landing(IntGraph<?> g, EdgeDirection dir) {
+            this.g = g;
+            this.dir = dir;
+            this.n = g.size();
+            cluster = new int[n];
+            for( int v=0; v<n; v++ )
+                cluster[v] = v;
+            for( int v=0; v<n; v++ )
+                for( int e=g.fwdStart[v]; e<g.fwdStart[v+1]; e++ )
+                    if(slack(v,g.fwdAdj[e])==0)
+                        union(v,g.fwdAdj[e]);
+
+            // number the clusters
+            int[] index = new int[n];
+            Arrays.fill(index,-1);
+            for( int v=0; v<n; v++ ) {
+                int r = find(v);
+                if(index[r]<0)  index[r] = clusters++;
             }
+            for( int v=0; v<n; v++ )
+                index[v] = index[find(v)];
+            System.arraycopy(index,0,cluster,0,n);
+        }
 
-            assert allBelongsToCluster(graph);
-
-            // compute drop height.
-            // if dir==FORWARD,  then this is the number of levels the nodes in a cluster
-            // will be increased (push down effect.)
-            // if dir==BACKWARD, then this is the number of levels the nodes in a cluster
-            // will be decreased (pull up effect.)
-
-            for (Vertex<T> v : graph) {// for all edges
-                for (Vertex<T> w : dir.getEdges(v)) {
-                    if(v.cluster!=w.cluster) {
-                        assert Math.abs(w.level-v.level)>1;
-                        // if |Lv(w)-Lv(v)|=0 then there shouldn't be an edge
-                        // if |Lv(w)-Lv(v)|=1 then they should be in the same cluster
-                        v.cluster.dropHeight = Math.min( v.cluster.dropHeight, Math.abs(w.level-v.level)-1 );
+        private int find(int v) {
+            while(cluster[v]!=v)
+                v = cluster[v] = cluster[cluster[v]];
+            return v;
+        }
+
+        private void union(int v, int w) {
+            cluster[find(v)] = find(w);
+        }
+
+        /**
+         * Number of levels the edge between v and w can shrink.
+         */
+        private int slack(int v, int w) {
+            return Math.abs(g.level[w]-g.level[v])-1;
+        }
+
+        /**
+         * Marks the cluster c as one that stays, and all the clusters that can fall onto it as grounded.
+         *
+         * @return
+         *      the new tail of the queue, which has all the grounded clusters.
+         */
+        private int ground(int c, boolean[] stays, boolean[] grounded, int[] queue, int tail, int[] start, int[] members) {
+            final EdgeDirection rdir = dir.opposite();
+            final int[] radj = g.adj(rdir);
+            stays[c] = grounded[c] = true;
+            int head = tail;
+            queue[tail++] = c;
+            while(head<tail) {
+                c = queue[head++];
+                for( int i=start[c]; i<start[c+1]; i++ ) {
+                    int w = members[i];
+                    for( int e=g.start(rdir,w); e<g.end(rdir,w); e++ ) {
+                        int b = cluster[radj[e]];
+                        if(!grounded[b]) {
+                            grounded[b] = true;
+                            queue[tail++] = b;
+                        }
                     }
                 }
             }
+            return tail;
+        }
+
+        /**
+         * Lets all the clusters land.
+         *
+         * @return
+         *      true if anything fell.
+         */
+        boolean run() {
+            final int[] adj = g.adj(dir);
+            final int[] radj = g.adj(dir.opposite());
+            final EdgeDirection rdir = dir.opposite();
 
-            hasDrop = false;
-            for (Vertex v : graph) {// drop nodes
-                int h = v.cluster.dropHeight;
-                if(h!=Integer.MAX_VALUE) {
-                    assert h>0; // if h==0 then v must have been merged with another cluster
-                    hasDrop = true;
-                    v.level += dir.sign()*h;
+            // vertices of each cluster
+            int[] start = new int[clusters+1];
+            for( int v=0; v<n; v++ )
+                start[cluster[v]+1]++;
+            for( int c=0; c<clusters; c++ )
+                start[c+1] += start[c];
+            int[] members = new int[n];
+            int[] fill = start.clone();
+            for( int v=0; v<n; v++ )
+                members[fill[cluster[v]]++] = v;
+
+            boolean[] falls = new boolean[clusters];   // has an edge to another cluster to fall along
+            for( int v=0; v<n; v++ )
+                for( int e=g.start(dir,v); e<g.end(dir,v); e++ )
+                    if(cluster[adj[e]]!=cluster[v]) {
+                        assert slack(v,adj[e])>0;
+                        falls[cluster[v]] = true;
+                    }
+
+            // clusters that can reach one that stays, by following the edges.
+            // the rest only chase each other, so among each group of them,
+            // the one that has got the farthest stays, and the rest land on it.
+            boolean[] stays = new boolean[clusters];
+            boolean[] grounded = new boolean[clusters];
+            int[] queue = new int[clusters];
+            int tail=0;
+            for( int c=0; c<clusters; c++ )
+                if(!falls[c])
+                    tail = ground(c,stays,grounded,queue,tail,start,members);
+            if(tail<clusters) {
+                // vertices from the farthest, encoded as (-level)<<32|v
+                long[] byDepth = new long[n];
+                for( int v=0; v<n; v++ )
+                    byDepth[v] = ((long)-dir.sign()*g.level[v])<<32 | v;
+                Arrays.sort(byDepth);
+                for (long x : byDepth) {
+                    int c = cluster[(int)x];
+                    if(!grounded[c])
+                        tail = ground(c,stays,grounded,queue,tail,start,members);
                 }
-                v.cluster=null; // erase the cluster mark for the next iteration
             }
-        } while(hasDrop);
-    }
+            assert tail==clusters;
 
-    /**
-     * Makes sure that no vertices belong to a cluster.
-     */
-    private <T> boolean nothingInCluster(Collection<Vertex<T>> graph) {
-        for (Vertex v : graph)
-            assert v.cluster==null;
-        return true;
-    }
+            // shortest distance to the clusters that stay, by Dijkstra
+            int[] drop = new int[clusters];
+            Arrays.fill(drop,Integer.MAX_VALUE);
+            LongHeap heap = new LongHeap(clusters);
+            for( int c=0; c<clusters; c++ )
+                if(stays[c]) {
+                    drop[c] = 0;
+                    heap.add(c);
+                }
+            boolean moved = false;
+            while(!heap.isEmpty()) {
+                long x = heap.poll();
+                int c = (int)x;
+                int d = (int)(x>>>32);
+                if(d>drop[c])   continue;   // stale
+                moved |= d>0;
+                for( int i=start[c]; i<start[c+1]; i++ ) {
+                    int w = members[i];
+                    for( int e=g.start(rdir,w); e<g.end(rdir,w); e++ ) {
+                        int v = radj[e];
+                        int b = cluster[v];
+                        if(b==c)    continue;
+                        int nd = d+slack(v,w);
+                        if(nd<drop[b]) {
+                            drop[b] = nd;
+                            heap.add(((long)nd<<32)|b);
+                        }
+                    }
+                }
+            }
 
-    /**
-     * Makes sure that all vertices belong to some cluster.
-     */
-    private <T> boolean allBelongsToCluster(Collection<Vertex<T>> graph) {
-        for (Vertex v : graph)
-            assert v.cluster!=null;
-        return true;
+            if(moved)
+                for( int v=0; v<n; v++ )
+                    g.level[v] += dir.sign()*drop[cluster[v]];
+            return moved;
+        }
     }
+
+    private static final Logger LOGGER = Logger.getLogger(HierarchyBuilder.class.getName());
 }
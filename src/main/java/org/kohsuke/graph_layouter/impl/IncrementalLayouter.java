@@ -0,0 +1,648 @@
+package org.kohsuke.graph_layouter.impl;
+
+import org.kohsuke.graph_layouter.Deadline;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+import static org.kohsuke.graph_layouter.impl.Spacing.X_GAP;
+import static org.kohsuke.graph_layouter.impl.Spacing.Y_GAP;
+
+/**
+ * Keeps a laid out graph up to date as vertices and edges are added and removed.
+ *
+ * <p>
+ * Changes are recorded as they are made, and {@link #relayout()} then repairs the layout
+ * around them, starting from the current levels, orders and positions:
+ * <ol>
+ * <li>New vertices go one level above their highest successor, or else one level below their
+ *     lowest predecessor, so that the vertices already there don't have to move. Then the heads of
+ *     new edges that still go up are pushed down until every edge goes down again.
+ *     An edge that would close a cycle is reversed, as {@link HierarchyBuilder} does.
+ * <li>Long edges whose ends have moved get new chains of dummy vertices.
+ * <li>Vertices that moved to a level, and new vertices, are inserted into it by their X coordinates,
+ *     and then only the changed levels are {@link OrderAssigner#transpose(java.util.Collection) transposed}.
+ * <li>Vertices around the changes go to the barycenters of their neighbours,
+ *     and the other vertices on the changed levels move as little as possible to make room.
+ * </ol>
+ * So the work is proportional to the size of the levels that changed, rather than the whole graph,
+ * except that the Y coordinates of the levels below a level whose height changed are shifted.
+ * Levels added above the top one grow upward, so they don't shift the others.
+ * The result is not as good as laying out the graph again from scratch, as vertices only ever
+ * move down and vertices far from the changes are not reconsidered.
+ *
+ * <p>
+ * Edges are not {@link ProperTransformer#setConcentrate(boolean) concentrated}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class IncrementalLayouter<T> {
+    private final LevelMap<T> lm;
+
+    private Deadline deadline;
+
+    /**
+     * Vertices added since the last {@link #relayout()}, which aren't on any level yet.
+     */
+    private final Set<Vertex<T>> fresh = new LinkedHashSet<Vertex<T>>();
+
+    /**
+     * Edges added since the last {@link #relayout()}, as pairs of the source and the sink.
+     */
+    private final List<Vertex<T>> pendingFrom = new ArrayList<Vertex<T>>(), pendingTo = new ArrayList<Vertex<T>>();
+
+    /**
+     * Vertices, real or dummy, that are gone but still need to be taken out of their levels.
+     */
+    private final Set<Vertex<T>> removed = Collections.newSetFromMap(new IdentityHashMap<Vertex<T>,Boolean>());
+
+    /**
+     * Vertices whose neighbours have changed, which are placed again.
+     */
+    private final Set<Vertex<T>> touched = new LinkedHashSet<Vertex<T>>();
+
+    /**
+     * {@link Level#n} of the levels that have changed.
+     */
+    private final SortedSet<Integer> dirty = new TreeSet<Integer>();
+
+    /**
+     * Height of each level, by {@link Level#n}, as of the last {@link #relayout()}.
+     */
+    private final Map<Integer,Integer> heights = new HashMap<Integer,Integer>();
+
+    /**
+     * {@link Level#n} and the Y coordinate of the top level as of the last {@link #relayout()},
+     * which stays where it is when levels are added above it.
+     */
+    private int anchor, anchorY;
+
+    /**
+     * @param lm
+     *      Graph that's already laid out, or an empty {@link LevelMap} to start from nothing.
+     *      This object takes it over, and changes it from then on.
+     */
+    public IncrementalLayouter(LevelMap<T> lm) {
+        this.lm = lm;
+        for (Level<T> lv : lm.levels())
+            heights.put(lv.n,height(lv));
+        if(!lm.levels().isEmpty()) {
+            Level<T> top = lm.first();
+            anchor = top.n;
+            anchorY = top.vertices.isEmpty() ? 0 : top.vertices.get(0).pos.y;
+        }
+    }
+
+    public LevelMap<T> getLevelMap() {
+        return lm;
+    }
+
+    /**
+     * Sets the deadline of each {@link #relayout()}.
+     * When it expires, the ordering stops improving, but the layout is still made valid.
+     *
+     * @param deadline
+     *      If null, which is the default, there's no time bound.
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Adds a vertex, which gets its position in the next {@link #relayout()}.
+     */
+    public void addVertex(Vertex<T> v) {
+        assert !v.isDummy();
+        fresh.add(v);
+    }
+
+    /**
+     * Adds an edge from v to w, which gets its position in the next {@link #relayout()}.
+     * Self loops and edges that are already there in either direction are ignored.
+     */
+    public void addEdge(Vertex<T> v, Vertex<T> w) {
+        if(v==w || hasEdge(v,w) || hasEdge(w,v))
+            return;
+        pendingFrom.add(v);
+        pendingTo.add(w);
+    }
+
+    /**
+     * Removes the edge between v and w, which may have been reversed to break a cycle.
+     *
+     * @return
+     *      false if there's no such edge.
+     */
+    public boolean removeEdge(Vertex<T> v, Vertex<T> w) {
+        if(removePending(v,w) || removePending(w,v))
+            return true;
+        if(!removeChain(v,w) && !removeChain(w,v))
+            return false;
+        touch(v);
+        touch(w);
+        return true;
+    }
+
+    /**
+     * Removes a vertex and all its edges.
+     */
+    public void removeVertex(Vertex<T> v) {
+        for( int i=pendingFrom.size()-1; i>=0; i-- )
+            if(pendingFrom.get(i)==v || pendingTo.get(i)==v) {
+                pendingFrom.remove(i);
+                pendingTo.remove(i);
+            }
+
+        for (Vertex<T> w : successors(v)) {
+            removeChain(v,w);
+            touch(w);
+        }
+        for (Vertex<T> u : predecessors(v)) {
+            removeChain(u,v);
+            touch(u);
+        }
+        touched.remove(v);
+
+        if(!fresh.remove(v)) {
+            removed.add(v);
+            dirty.add(v.level);
+        }
+    }
+
+    /**
+     * Updates the layout for the changes made since the last call.
+     */
+    public void relayout() {
+        placeFresh();
+
+        // assign levels. existing vertices that move are remembered with their old levels
+        Map<Vertex<T>,Integer> moved = new LinkedHashMap<Vertex<T>,Integer>();
+        Map<Vertex<T>,Set<Vertex<T>>> rechain = new LinkedHashMap<Vertex<T>,Set<Vertex<T>>>();
+        int reversed=0;
+        for( int i=0; i<pendingFrom.size(); i++ ) {
+            Vertex<T> v = pendingFrom.get(i);
+            Vertex<T> w = pendingTo.get(i);
+            if(successors(v).contains(w) || successors(w).contains(v))
+                continue;   // added twice
+            if(w.level<=v.level && reaches(w,v)) {
+                // v->w would close a cycle, so add w->v instead
+                Vertex<T> t=v; v=w; w=t;
+                reversed++;
+            }
+            v.addEdge(w);   // for now. this is made proper below
+            add(rechain,v,w);
+            pushDown(w,v.level+1,moved);
+        }
+        pendingFrom.clear();
+        pendingTo.clear();
+
+        for (Vertex<T> v : moved.keySet()) {
+            for (Vertex<T> w : successors(v))
+                add(rechain,v,w);
+            for (Vertex<T> u : predecessors(v))
+                add(rechain,u,v);
+            dirty.add(moved.get(v));
+        }
+
+        // take the moved vertices and the old chains out of the levels, and make the new chains
+        List<Vertex<T>> inserted = new ArrayList<Vertex<T>>(fresh);
+        inserted.addAll(moved.keySet());
+        for (Map.Entry<Vertex<T>,Set<Vertex<T>>> e : rechain.entrySet()) {
+            Vertex<T> v = e.getKey();
+            for (Vertex<T> w : e.getValue()) {
+                removeChain(v,w);
+                makeChain(v,w,inserted);
+                touch(v);
+                touch(w);
+            }
+        }
+        for (Vertex<T> v : inserted)
+            touch(v);
+
+        for (Integer n : dirty) {
+            Level<T> lv = lm.make(n);
+            for (Iterator<Vertex<T>> itr = lv.vertices.iterator(); itr.hasNext();) {
+                Vertex<T> v = itr.next();
+                if(removed.contains(v) || v.level!=n)
+                    itr.remove();
+            }
+        }
+        insert(inserted,moved.keySet());
+
+        List<Level<T>> levels = new ArrayList<Level<T>>();
+        for (Integer n : dirty) {
+            Level<T> lv = lm.make(n);
+            lv.assignOrder();
+            levels.add(lv);
+        }
+
+        // reorder and place only the changed levels
+        OrderAssigner oa = new OrderAssigner();
+        oa.setDeadline(deadline);
+        oa.transpose(levels);
+        for (Level<T> lv : levels)
+            place(lv);
+        placeLevels();
+
+        if(LOGGER.isLoggable(FINE))
+            LOGGER.fine("Relayout: "+fresh.size()+" new vertices, "+moved.size()+" moved, "
+                    +rechain.size()+" chains, "+reversed+" reversed edges, "+levels.size()+" levels");
+
+        fresh.clear();
+        removed.clear();
+        touched.clear();
+        dirty.clear();
+    }
+
+    /**
+     * Gives levels to the new vertices, one level above their highest successor, or else
+     * one level below their lowest predecessor, or else on the top level.
+     * New vertices are placed after their new successors, so that they can be placed above them.
+     */
+    private void placeFresh() {
+        int top = lm.levels().isEmpty() ? 0 : lm.first().n;
+
+        Map<Vertex<T>,Set<Vertex<T>>> out = new HashMap<Vertex<T>,Set<Vertex<T>>>();
+        Map<Vertex<T>,Set<Vertex<T>>> in = new HashMap<Vertex<T>,Set<Vertex<T>>>();
+        for( int i=0; i<pendingFrom.size(); i++ ) {
+            Vertex<T> v = pendingFrom.get(i);
+            Vertex<T> w = pendingTo.get(i);
+            if(fresh.contains(v))   add(out,v,w);
+            if(fresh.contains(w))   add(in,w,v);
+        }
+
+        // Kahn's algorithm over the edges among the new vertices, from the bottom
+        Map<Vertex<T>,Integer> waiting = new HashMap<Vertex<T>,Integer>();
+        Deque<Vertex<T>> ready = new ArrayDeque<Vertex<T>>();
+        for (Vertex<T> v : fresh) {
+            int c=0;
+            for (Vertex<T> w : get(out,v))
+                if(fresh.contains(w))   c++;
+            waiting.put(v,c);
+            if(c==0)    ready.add(v);
+        }
+        Set<Vertex<T>> placed = new HashSet<Vertex<T>>();
+        while(!ready.isEmpty()) {
+            Vertex<T> v = ready.poll();
+            int above = Integer.MAX_VALUE, below = Integer.MIN_VALUE;
+            for (Vertex<T> w : get(out,v))
+                above = Math.min(above,w.level-1);  // new ones are placed by now
+            for (Vertex<T> u : get(in,v))
+                if(!fresh.contains(u))
+                    below = Math.max(below,u.level+1);
+            v.level = above!=Integer.MAX_VALUE ? above : below!=Integer.MIN_VALUE ? below : top;
+            placed.add(v);
+
+            for (Vertex<T> u : get(in,v))
+                if(fresh.contains(u) && waiting.put(u,waiting.get(u)-1)==1)
+                    ready.add(u);
+        }
+
+        // the rest are on cycles among the new vertices, which are broken as the edges are added
+        for (Vertex<T> v : fresh)
+            if(!placed.contains(v))
+                v.level = top;
+    }
+
+    private Set<Vertex<T>> get(Map<Vertex<T>,Set<Vertex<T>>> edges, Vertex<T> v) {
+        Set<Vertex<T>> s = edges.get(v);
+        return s!=null ? s : Collections.<Vertex<T>>emptySet();
+    }
+
+    /**
+     * Checks if there's an edge from v to w in the graph, or waiting to be added.
+     */
+    private boolean hasEdge(Vertex<T> v, Vertex<T> w) {
+        if(successors(v).contains(w))
+            return true;
+        for( int i=0; i<pendingFrom.size(); i++ )
+            if(pendingFrom.get(i)==v && pendingTo.get(i)==w)
+                return true;
+        return false;
+    }
+
+    private boolean removePending(Vertex<T> v, Vertex<T> w) {
+        for( int i=0; i<pendingFrom.size(); i++ )
+            if(pendingFrom.get(i)==v && pendingTo.get(i)==w) {
+                pendingFrom.remove(i);
+                pendingTo.remove(i);
+                return true;
+            }
+        return false;
+    }
+
+    /**
+     * Real vertices that v has edges to, looking through the dummy vertices.
+     */
+    private List<Vertex<T>> successors(Vertex<T> v) {
+        List<Vertex<T>> r = new ArrayList<Vertex<T>>(v.forward.size());
+        for (Vertex<T> w : v.forward)
+            r.add(w.isDummy() ? w.sink : w);
+        return r;
+    }
+
+    /**
+     * Real vertices that have edges to v, looking through the dummy vertices.
+     */
+    private List<Vertex<T>> predecessors(Vertex<T> v) {
+        List<Vertex<T>> r = new ArrayList<Vertex<T>>(v.backward.size());
+        for (Vertex<T> u : v.backward)
+            r.add(u.isDummy() ? u.source : u);
+        return r;
+    }
+
+    private void add(Map<Vertex<T>,Set<Vertex<T>>> edges, Vertex<T> v, Vertex<T> w) {
+        Set<Vertex<T>> s = edges.get(v);
+        if(s==null)
+            edges.put(v,s=new LinkedHashSet<Vertex<T>>());
+        s.add(w);
+    }
+
+    /**
+     * Marks a vertex to be placed again.
+     */
+    private void touch(Vertex<T> v) {
+        if(removed.contains(v))
+            return;
+        touched.add(v);
+        if(!fresh.contains(v))
+            dirty.add(v.level);
+    }
+
+    /**
+     * Checks if w reaches v. As every edge goes down, only the vertices above v need to be searched.
+     */
+    private boolean reaches(Vertex<T> w, Vertex<T> v) {
+        Set<Vertex<T>> visited = Collections.newSetFromMap(new IdentityHashMap<Vertex<T>,Boolean>());
+        Deque<Vertex<T>> stack = new ArrayDeque<Vertex<T>>();
+        stack.push(w);
+        visited.add(w);
+        while(!stack.isEmpty()) {
+            Vertex<T> u = stack.pop();
+            if(u==v)    return true;
+            for (Vertex<T> x : successors(u))
+                if(x.level<=v.level && visited.add(x))
+                    stack.push(x);
+        }
+        return false;
+    }
+
+    /**
+     * Moves w down to the given level if it's above it, and everything below it that's in the way.
+     */
+    private void pushDown(Vertex<T> w, int level, Map<Vertex<T>,Integer> moved) {
+        Deque<Vertex<T>> queue = new ArrayDeque<Vertex<T>>();
+        if(w.level>=level)  return;
+        move(w,level,moved);
+        queue.add(w);
+        while(!queue.isEmpty()) {
+            Vertex<T> u = queue.poll();
+            for (Vertex<T> x : successors(u))
+                if(x.level<=u.level) {
+                    move(x,u.level+1,moved);
+                    queue.add(x);
+                }
+        }
+    }
+
+    private void move(Vertex<T> v, int level, Map<Vertex<T>,Integer> moved) {
+        if(!fresh.contains(v) && !moved.containsKey(v))
+            moved.put(v,v.level);
+        v.level = level;
+    }
+
+    /**
+     * Removes the edge or the chain of dummy vertices from v to w.
+     *
+     * @return
+     *      false if there's no such edge.
+     */
+    private boolean removeChain(Vertex<T> v, Vertex<T> w) {
+        for (Vertex<T> c : v.forward) {
+            if(c==w) {
+                v.removeEdge(w);
+                return true;
+            }
+            if(c.isDummy() && c.sink==w) {
+                Vertex<T> prev = v;
+                while(c.isDummy()) {
+                    Vertex<T> next = c.forward.iterator().next();
+                    prev.removeEdge(c);
+                    removed.add(c);
+                    dirty.add(c.level);
+                    prev = c;
+                    c = next;
+                }
+                prev.removeEdge(w);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Connects v to w, with a chain of dummy vertices if it's a long edge.
+     * The dummy vertices are placed on the straight line between the two.
+     */
+    private void makeChain(Vertex<T> v, Vertex<T> w, List<Vertex<T>> inserted) {
+        assert v.level<w.level;
+        Vertex<T> src = v;
+        for( int i=v.level+1; i<w.level; i++ ) {
+            Vertex<T> u = new Vertex<T>(v,w);
+            u.level = i;
+            src.addEdge(u);
+            inserted.add(u);
+            src = u;
+        }
+        src.addEdge(w);
+    }
+
+    /**
+     * Puts the vertices on their levels, by their X coordinates.
+     * Vertices that don't have their X coordinates yet get ones first.
+     */
+    private void insert(List<Vertex<T>> inserted, Set<Vertex<T>> moved) {
+        // new vertices go to the barycenter of their neighbours that are placed,
+        // or to the right end of the level if there's none.
+        Set<Vertex<T>> unplaced = new LinkedHashSet<Vertex<T>>();
+        for (Vertex<T> v : inserted)
+            if(!moved.contains(v))
+                unplaced.add(v);
+        for (Vertex<T> v : inserted) {
+            if(v.isDummy() || moved.contains(v))  continue;
+            long sum=0; int n=0;
+            for (Vertex<T> w : successors(v))
+                if(!unplaced.contains(w)) { sum+=w.pos.x; n++; }
+            for (Vertex<T> u : predecessors(v))
+                if(!unplaced.contains(u)) { sum+=u.pos.x; n++; }
+            if(n>0) {
+                v.pos.x = (int)(sum/n);
+                unplaced.remove(v);
+            }
+        }
+        for (Vertex<T> v : inserted) {
+            if(!v.isDummy() || !unplaced.contains(v) || unplaced.contains(v.source) || unplaced.contains(v.sink))
+                continue;
+            int span = v.sink.level-v.source.level;
+            v.pos.x = v.source.pos.x+(v.sink.pos.x-v.source.pos.x)*(v.level-v.source.level)/span;
+            unplaced.remove(v);
+        }
+
+        Map<Integer,List<Vertex<T>>> byLevel = new HashMap<Integer,List<Vertex<T>>>();
+        for (Vertex<T> v : inserted) {
+            List<Vertex<T>> l = byLevel.get(v.level);
+            if(l==null)
+                byLevel.put(v.level,l=new ArrayList<Vertex<T>>());
+            l.add(v);
+            dirty.add(v.level);
+        }
+        for (Map.Entry<Integer,List<Vertex<T>>> e : byLevel.entrySet()) {
+            Level<T> lv = lm.make(e.getKey());
+            List<Vertex<T>> add = e.getValue();
+            int right = -X_GAP;  // right end of the level
+            for (Vertex<T> v : lv.vertices)
+                right = Math.max(right,v.pos.x+v.size.width/2);
+            for (Vertex<T> v : add)
+                if(!unplaced.contains(v))
+                    right = Math.max(right,v.pos.x+v.size.width/2);
+            for (Vertex<T> v : add)
+                if(unplaced.contains(v)) {
+                    v.pos.x = right+X_GAP+v.size.width/2;
+                    right = v.pos.x+v.size.width/2;
+                }
+            Collections.sort(add,BY_X);   // stable, so the vertices in the same place keep their relative order
+
+            // merge
+            List<Vertex<T>> merged = new ArrayList<Vertex<T>>(lv.vertices.size()+add.size());
+            int j=0;
+            for (Vertex<T> v : lv.vertices) {
+                while(j<add.size() && add.get(j).pos.x<v.pos.x)
+                    merged.add(add.get(j++));
+                merged.add(v);
+            }
+            merged.addAll(add.subList(j,add.size()));
+            lv.vertices.clear();
+            lv.vertices.addAll(merged);
+        }
+    }
+
+    /**
+     * Moves vertices on the level as close to their ideal X coordinates as possible,
+     * while keeping them in the order and apart.
+     *
+     * <p>
+     * The ideal position of a touched vertex is the barycenter of its neighbours, and that of the other vertices
+     * is where they are. With x[i]-offset[i], where offset[i] is the space the vertices up to i need,
+     * the constraints become just x[i]-offset[i] &lt;= x[i+1]-offset[i+1]. So this is the isotonic regression,
+     * which is solved in linear time by pooling adjacent violators into blocks.
+     */
+    private void place(Level<T> lv) {
+        final List<Vertex<T>> vertices = lv.vertices;
+        final int n = vertices.size();
+        long[] offset = new long[n];
+        long[] sum = new long[n];   // blocks, in the stack
+        int[] count = new int[n];
+        int blocks=0;
+        for( int i=0; i<n; i++ ) {
+            Vertex<T> v = vertices.get(i);
+            if(i>0)
+                offset[i] = offset[i-1]+vertices.get(i-1).size.width/2+X_GAP+v.size.width/2;
+            sum[blocks] = ideal(v)-offset[i];
+            count[blocks++] = 1;
+            // merge while the mean of the previous block is bigger
+            while(blocks>1 && sum[blocks-2]*count[blocks-1]>sum[blocks-1]*count[blocks-2]) {
+                sum[blocks-2] += sum[blocks-1];
+                count[blocks-2] += count[blocks-1];
+                blocks--;
+            }
+        }
+        for( int b=0,i=0; b<blocks; b++ ) {
+            long mean = Math.round((double)sum[b]/count[b]);
+            for( int k=0; k<count[b]; k++,i++ )
+                vertices.get(i).pos.x = (int)(mean+offset[i]);
+        }
+    }
+
+    private long ideal(Vertex<T> v) {
+        if(!touched.contains(v))
+            return v.pos.x;
+        long sum=0;
+        int n=0;
+        for (Vertex<T> w : v.forward) {
+            sum += w.pos.x;
+            n++;
+        }
+        for (Vertex<T> u : v.backward) {
+            sum += u.pos.x;
+            n++;
+        }
+        return n==0 ? v.pos.x : sum/n;
+    }
+
+    /**
+     * Updates the Y coordinates of the levels that changed or moved.
+     */
+    private void placeLevels() {
+        for (Integer n : dirty)
+            heights.put(n,height(lm.get(n)));
+
+        // levels above the anchor are stacked upward from it
+        int y=anchorY;
+        for (Level<T> lv : lm.levels()) {
+            if(lv.n>=anchor)    break;
+            y -= heightOf(lv)+Y_GAP;
+        }
+        if(!lm.levels().isEmpty()) {
+            anchor = lm.first().n;
+            anchorY = y;
+        }
+
+        for (Level<T> lv : lm.levels()) {
+            if(dirty.contains(lv.n) || (!lv.vertices.isEmpty() && lv.vertices.get(0).pos.y!=y))
+                for (Vertex<T> v : lv.vertices)
+                    v.pos.y = y;
+            y += heightOf(lv)+Y_GAP;
+        }
+    }
+
+    /**
+     * Height of the level as of the last {@link #relayout()}, or as it is now if it's new.
+     */
+    private int heightOf(Level<T> lv) {
+        Integer h = heights.get(lv.n);
+        if(h==null)
+            heights.put(lv.n,h=height(lv));
+        return h;
+    }
+
+    private int height(Level<T> lv) {
+        int ysz=0;
+        for (Vertex<T> v : lv.vertices)
+            ysz = Math.max(ysz,v.size.height);
+        return ysz;
+    }
+
+    private static final Comparator<Vertex<?>> BY_X = new Comparator<Vertex<?>>() {
+        public int compare(Vertex<?> lhs, Vertex<?> rhs) {
+            return lhs.pos.x<rhs.pos.x ? -1 : lhs.pos.x>rhs.pos.x ? 1 : 0;
+        }
+    };
+
+    private static final Logger LOGGER = Logger.getLogger(IncrementalLayouter.class.getName());
+}
@@ -0,0 +1,212 @@
+package org.kohsuke.graph_layouter.impl;
+
+import java.util.Collection;
+
+/**
+ * Snapshot of a graph of {@link Vertex}s for traversal, where vertices are identified by int IDs
+ * and edges are stored in the compressed sparse row format.
+ *
+ * <p>
+ * Algorithms that only need to walk the graph run on this representation to avoid chasing
+ * pointers through {@link Vertex#forward} and {@link Vertex#backward} in their inner loops.
+ * The {@link Vertex} objects remain the graph; changes made on this object,
+ * such as {@link #level}, need to be written back by {@link #storeLevels()}.
+ *
+ * <p>
+ * A snapshot comes on top of the {@link Vertex} graph, taking about 30V+8E bytes, so it saves time
+ * rather than memory. Each phase builds its own when it starts and drops it when it's done,
+ * and the snapshot does not track changes made to the {@link Vertex} graph after it's created.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class IntGraph<T> {
+    /**
+     * ID to {@link Vertex}. IDs are assigned in the iteration order of the collection given.
+     */
+    final Vertex<T>[] vertices;
+
+    /**
+     * Open addressing hash table from the vertex, by its identity, to 1+its ID. 0 is an empty slot.
+     * This is the reverse of {@link #vertices}, kept here so that snapshots over the same vertices
+     * don't interfere with each other.
+     */
+    private final int[] index;
+
+    /**
+     * Forward edges of the vertex i are {@code fwdAdj[fwdStart[i]..fwdStart[i+1])},
+     * in the iteration order of {@link Vertex#forward}.
+     */
+    final int[] fwdStart, fwdAdj;
+
+    /**
+     * Backward edges, in the same format as {@link #fwdStart} and {@link #fwdAdj}.
+     */
+    final int[] bwdStart, bwdAdj;
+
+    /**
+     * {@link Vertex#level} of each vertex.
+     */
+    final int[] level;
+
+    @SuppressWarnings({"unchecked","rawtypes"})
+    IntGraph(Collection<Vertex<T>> graph) {
+        int n = graph.size();
+        vertices = graph.toArray(new Vertex[n]);
+        level = new int[n];
+        index = new int[Integer.highestOneBit(n*2+1)*2];
+
+        int fe=0, be=0;
+        for( int i=0; i<n; i++ ) {
+            Vertex<T> v = vertices[i];
+            index[slot(v)] = i+1;
+            level[i] = v.level;
+            fe += v.forward.size();
+            be += v.backward.size();
+        }
+
+        fwdStart = new int[n+1];
+        fwdAdj = new int[fe];
+        bwdStart = new int[n+1];
+        bwdAdj = new int[be];
+        fe=be=0;
+        for( int i=0; i<n; i++ ) {
+            Vertex<T> v = vertices[i];
+            fwdStart[i] = fe;
+            for (Vertex<T> w : v.forward)
+                fwdAdj[fe++] = edgeTo(w);
+            bwdStart[i] = be;
+            for (Vertex<T> w : v.backward)
+                bwdAdj[be++] = edgeTo(w);
+        }
+        fwdStart[n] = fe;
+        bwdStart[n] = be;
+    }
+
+    private int edgeTo(Vertex<T> v) {
+        int id = id(v);
+        if(id<0)
+            throw new IllegalArgumentException(v+" is reachable but not in the graph");
+        return id;
+    }
+
+    /**
+     * Finds the slot of {@link #index} for the given vertex,
+     * which is either where it is or the empty slot where it would be.
+     */
+    private int slot(Vertex<?> v) {
+        int mask = index.length-1;
+        int h = System.identityHashCode(v);
+        int s = (h^(h>>>16))&mask;
+        while(index[s]!=0 && vertices[index[s]-1]!=v)
+            s = (s+1)&mask;
+        return s;
+    }
+
+    /**
+     * Returns the ID of the vertex, or -1 if it's not in this graph.
+     */
+    int id(Vertex<?> v) {
+        return index[slot(v)]-1;
+    }
+
+    int size() {
+        return vertices.length;
+    }
+
+    /**
+     * Start index of the edges of the vertex v in {@link #adj(EdgeDirection)}.
+     */
+    int start(EdgeDirection dir, int v) {
+        return dir==EdgeDirection.FORWARD ? fwdStart[v] : bwdStart[v];
+    }
+
+    /**
+     * End index (exclusive) of the edges of the vertex v in {@link #adj(EdgeDirection)}.
+     */
+    int end(EdgeDirection dir, int v) {
+        return dir==EdgeDirection.FORWARD ? fwdStart[v+1] : bwdStart[v+1];
+    }
+
+    int[] adj(EdgeDirection dir) {
+        return dir==EdgeDirection.FORWARD ? fwdAdj : bwdAdj;
+    }
+
+    /**
+     * Callbacks of {@link IntGraph#dfs(EdgeDirection, Visitor)}.
+     */
+    interface Visitor {
+        /**
+         * Called when the vertex is first reached.
+         */
+        void in(int v);
+
+        /**
+         * Called when all the vertices reachable from v have been visited.
+         */
+        void out(int v);
+    }
+
+    /**
+     * Visits all the vertices by DFS.
+     *
+     * <p>
+     * Roots are taken in the ID order, and edges of each vertex are followed from the last one
+     * to the first one. The traversal uses an explicit stack of vertex IDs and edge cursors,
+     * so it works on arbitrarily deep graphs and doesn't allocate per visit.
+     */
+    void dfs(EdgeDirection dir, Visitor visitor) {
+        final int n = size();
+        final int[] adj = adj(dir);
+        boolean[] visited = new boolean[n];
+        int[] stack = new int[n];
+        int[] cursor = new int[n];  // next edge to follow, counting down, for each vertex in the stack
+
+        for( int root=0; root<n; root++ ) {
+            if(visited[root])   continue;
+            visited[root] = true;
+            visitor.in(root);
+            int sp=0;
+            stack[sp] = root;
+            cursor[sp++] = end(dir,root);
+
+            while(sp>0) {
+                int v = stack[sp-1];
+                if(cursor[sp-1]>start(dir,v)) {
+                    int w = adj[--cursor[sp-1]];
+                    if(!visited[w]) {
+                        visited[w] = true;
+                        visitor.in(w);
+                        stack[sp] = w;
+                        cursor[sp++] = end(dir,w);
+                    }
+                } else {
+                    sp--;
+                    visitor.out(v);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists vertices in the order they are finished by {@link #dfs(EdgeDirection, Visitor)}.
+     */
+    int[] postOrder(EdgeDirection dir) {
+        final int[] r = new int[size()];
+        dfs(dir,new Visitor() {
+            int k=0;
+            public void in(int v) {}
+            public void out(int v) {
+                r[k++] = v;
+            }
+        });
+        return r;
+    }
+
+    /**
+     * Writes {@link #level} back to {@link Vertex#level}.
+     */
+    void storeLevels() {
+        for( int i=0; i<vertices.length; i++ )
+            vertices[i].level = level[i];
+    }
+}
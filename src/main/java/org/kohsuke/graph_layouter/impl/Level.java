@@ -19,6 +19,16 @@ public final class Level<T> {
 
     public final ArrayList<Vertex<T>> vertices = new ArrayList<Vertex<T>>();
 
+    /**
+     * Cached number of edge crossings between this level and the {@link #next} level,
+     * or -1 if it needs to be recounted.
+     *
+     * <p>
+     * Reordering a level invalidates the caches of the two level pairs it belongs to.
+     * Edges are assumed not to change while the ordering is being computed.
+     */
+    private int crossings = -1;
+
     public Level(int n) {
         this.n = n;
     }
@@ -72,6 +82,7 @@ public final class Level<T> {
         int i=0;
         for (Vertex<T> v : vertices)
             v.order = i++;
+        invalidate();
     }
 
     /**
@@ -84,12 +95,36 @@ public final class Level<T> {
             vertices.set(i, v);
             v.order = i;
         }
+        invalidate();
     }
 
     /**
      * Reorders the vertices in this level by swapping two vertices.
      */
     public void swap(Vertex<T> v, Vertex<T> w) {
+        exchange(v,w);
+        invalidate();
+    }
+
+    /**
+     * Swaps two vertices when the resulting changes in the number of crossings are already known,
+     * so that the cached crossing counts can be updated without recounting.
+     *
+     * @param upDelta
+     *      Change in the number of crossings between {@link #prev} and this level.
+     * @param downDelta
+     *      Change in the number of crossings between this level and {@link #next}.
+     */
+    /*package*/ void swap(Vertex<T> v, Vertex<T> w, int upDelta, int downDelta) {
+        exchange(v,w);
+        if(crossings>=0)
+            crossings += downDelta;
+        if(prev!=null && prev.crossings>=0)
+            prev.crossings += upDelta;
+        assert crossings<0 || crossings==CrossingCounter.count(vertices, next.vertices.size(), EdgeDirection.FORWARD);
+    }
+
+    private void exchange(Vertex<T> v, Vertex<T> w) {
         assert vertices.get(v.order)==v;
         assert vertices.get(w.order)==w;
 
@@ -101,6 +136,16 @@ public final class Level<T> {
         w.order = t;
     }
 
+    /**
+     * Discards the cached crossing counts that involve this level.
+     * Needs to be called when the order of the vertices changes.
+     */
+    /*package*/ void invalidate() {
+        crossings = -1;
+        if(prev!=null)
+            prev.crossings = -1;
+    }
+
     /**
      * Gets the number of crossings between this level and its two adjacent levels.
      */
@@ -124,31 +169,9 @@ public final class Level<T> {
      */
     public int countCrossings() {
         if(next==null)  return 0;   // no next level
-
-        // try to find a pair (a,c) and (b,d) like this
-        //
-        // a  b
-        //  \/
-        //  /\
-        // d  c
-
-        int crossing = 0;
-
-        for( int ai=0; ai<vertices.size()-1; ai++ ) {
-            Vertex<T> a = vertices.get(ai);
-            for( int bi=ai+1; bi<vertices.size(); bi++ ) {
-                Vertex<T> b = vertices.get(bi);
-
-                for(Vertex<T> c : a.forward) {
-                    for(Vertex<T> d : b.forward) {
-                        if(c.order>d.order)
-                            crossing++;
-                    }
-                }
-            }
-        }
-
-        return crossing;
+        if(crossings<0)
+            crossings = CrossingCounter.count(vertices, next.vertices.size(), EdgeDirection.FORWARD);
+        return crossings;
     }
 
     /**
@@ -171,40 +194,7 @@ public final class Level<T> {
         // from and to must be adjacent, and its ordering must be consistent with the direction
         assert from.n+dir.sign()==to.n;
 
-        // try to find a pair (a,c) and (b,d) like this
-        //
-        // a  b
-        //  \/
-        //  /\
-        // d  c
-
-        int crossing = 0;
-
-        for( int ai=0; ai<from.vertices.size()-1; ai++ ) {
-            Vertex<T> a = from.vertices.get(ai);
-            for( int bi=ai+1; bi<from.vertices.size(); bi++ ) {
-                Vertex<T> b = from.vertices.get(bi);
-
-                for(Vertex<T> c : dir.getEdges(a)) {
-                    // swap
-                    if(c==v)    c=w;
-                    else
-                    if(c==w)    c=v;
-
-                    for(Vertex<T> d : dir.getEdges(b)) {
-                        // swap
-                        if(d==v)    d=w;
-                        else
-                        if(d==w)    d=v;
-
-                        if(c.order>d.order)
-                            crossing++;
-                    }
-                }
-            }
-        }
-
-        return crossing;
+        return CrossingCounter.count(from.vertices, to.vertices.size(), dir, v, w);
     }
 
     public boolean contains(Vertex<T> v) {
@@ -214,6 +204,9 @@ public final class Level<T> {
     }
 
     public int indexOf(Vertex<T> v) {
+        int i = v.order;
+        if(i>=0 && i<vertices.size() && vertices.get(i)==v)
+            return i;   // O(1) when the order is up to date
         return vertices.indexOf(v);
     }
 
@@ -0,0 +1,52 @@
+package org.kohsuke.graph_layouter.impl;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of longs, which are usually a priority and an index packed together.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class LongHeap {
+    private long[] heap;
+    private int size;
+
+    LongHeap(int capacity) {
+        heap = new long[Math.max(capacity,1)];
+    }
+
+    boolean isEmpty() {
+        return size==0;
+    }
+
+    long peek() {
+        return heap[0];
+    }
+
+    void add(long x) {
+        if(size==heap.length)
+            heap = Arrays.copyOf(heap,size*2);
+        int i = size++;
+        while(i>0 && heap[(i-1)/2]>x) {
+            heap[i] = heap[(i-1)/2];
+            i = (i-1)/2;
+        }
+        heap[i] = x;
+    }
+
+    long poll() {
+        long r = heap[0];
+        long x = heap[--size];
+        int i=0;
+        while(true) {
+            int c = 2*i+1;
+            if(c>=size) break;
+            if(c+1<size && heap[c+1]<heap[c])   c++;
+            if(heap[c]>=x)  break;
+            heap[i] = heap[c];
+            i = c;
+        }
+        heap[i] = x;
+        return r;
+    }
+}
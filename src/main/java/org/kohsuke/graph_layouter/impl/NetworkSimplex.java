@@ -0,0 +1,376 @@
+package org.kohsuke.graph_layouter.impl;
+
+import java.util.Arrays;
+
+/**
+ * Assigns levels that minimize the total span of edges, by the network simplex method [GKNV93].
+ *
+ * <p>
+ * An edge that spans k levels becomes k-1 dummy vertices in {@link ProperTransformer},
+ * so this minimizes the number of dummy vertices.
+ *
+ * <p>
+ * This works on an {@link IntGraph} whose {@link IntGraph#level} is a valid layering of a DAG,
+ * that is, every forward edge goes to a higher level. Each weakly connected component
+ * is solved on its own spanning tree, and then moved so that its lowest level
+ * (or its highest level, if the layering was built {@link EdgeDirection#BACKWARD})
+ * stays where it was.
+ *
+ * <p>
+ * The balancing step of the paper is not done, as the later phases take care of the width.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class NetworkSimplex<T> {
+    private final IntGraph<T> g;
+    private final int n;
+    /**
+     * Level of each vertex, updated in place.
+     */
+    private final int[] rank;
+
+    /**
+     * Edges are numbered by their position in {@link IntGraph#fwdAdj},
+     * and these are the tail and the head of each edge.
+     */
+    private final int[] tail, head;
+    /**
+     * Incoming edges of the vertex v are {@code inEdges[inStart[v]..inStart[v+1])}.
+     * Outgoing edges are {@code g.fwdStart[v]..g.fwdStart[v+1]}.
+     */
+    private final int[] inStart, inEdges;
+
+    private final boolean[] inTree;
+    /**
+     * The tree edge to the parent of each vertex, or -1 for roots.
+     */
+    private final int[] parentEdge;
+    /**
+     * Postorder number of each vertex in the tree, and the smallest such number in its subtree.
+     */
+    private final int[] lim, low;
+    /**
+     * Vertices in the postorder, so each subtree is a range in this array.
+     */
+    private final int[] postOrder;
+    private final int[] cutValue;
+    /**
+     * Root of the tree of each vertex, which identifies its component.
+     */
+    private final int[] root;
+
+    NetworkSimplex(IntGraph<T> g) {
+        this.g = g;
+        this.n = g.size();
+        this.rank = g.level;
+
+        int m = g.fwdAdj.length;
+        tail = new int[m];
+        head = new int[m];
+        for( int v=0; v<n; v++ )
+            for( int e=g.fwdStart[v]; e<g.fwdStart[v+1]; e++ ) {
+                tail[e] = v;
+                head[e] = g.fwdAdj[e];
+            }
+
+        inStart = new int[n+1];
+        for( int e=0; e<m; e++ )
+            inStart[head[e]+1]++;
+        for( int v=0; v<n; v++ )
+            inStart[v+1] += inStart[v];
+        inEdges = new int[m];
+        int[] fill = inStart.clone();
+        for( int e=0; e<m; e++ )
+            inEdges[fill[head[e]]++] = e;
+
+        inTree = new boolean[m];
+        parentEdge = new int[n];
+        lim = new int[n];
+        low = new int[n];
+        postOrder = new int[n];
+        visited = new int[n];
+        stack = new int[n];
+        cursor = new int[n];
+        cutValue = new int[m];
+        root = new int[n];
+    }
+
+    /**
+     * Computes the optimal levels into {@link IntGraph#level}.
+     *
+     * @return
+     *      the number of pivots made.
+     */
+    int run(EdgeDirection dir) {
+        for( int e=0; e<tail.length; e++ ) {
+            if(slack(e)<0)
+                throw new IllegalArgumentException("Not a valid layering: "+g.vertices[tail[e]]+"->"+g.vertices[head[e]]);
+        }
+
+        int[] before = rank.clone();
+        feasibleTree();
+        initTree();
+
+        int pivots=0;
+        int e;
+        while((e=leaveEdge())>=0) {
+            int f = enterEdge(e);
+            int top = commonAncestor(tail[f],head[f]);
+            inTree[e] = false;
+            inTree[f] = true;
+            updateTree(top);
+            pivots++;
+        }
+
+        normalize(before,dir);
+        return pivots;
+    }
+
+    private int slack(int e) {
+        return rank[head[e]]-rank[tail[e]]-1;
+    }
+
+    private int other(int e, int v) {
+        return tail[e]==v ? head[e] : tail[e];
+    }
+
+    /**
+     * Builds a spanning tree of tight edges in each component, shifting the levels as necessary.
+     */
+    private void feasibleTree() {
+        boolean[] inTreeNode = new boolean[n];
+        int[] members = new int[n];
+        int[] stack = new int[n];
+
+        for( int r=0; r<n; r++ ) {
+            if(inTreeNode[r])   continue;
+
+            // grow the tree from r
+            inTreeNode[r] = true;
+            members[0] = r;
+            int size = 1;
+            while(true) {
+                // add all the vertices reachable by tight edges
+                int sp=0;
+                for( int i=0; i<size; i++ )
+                    stack[sp++] = members[i];
+                while(sp>0) {
+                    int v = stack[--sp];
+                    for( int i=degree(v)-1; i>=0; i-- ) {
+                        int e = incident(v,i);
+                        int w = other(e,v);
+                        if(!inTreeNode[w] && slack(e)==0) {
+                            inTreeNode[w] = true;
+                            inTree[e] = true;
+                            members[size++] = w;
+                            stack[sp++] = w;
+                        }
+                    }
+                }
+
+                // find the incident non-tree edge with the smallest slack
+                int best=-1;
+                for( int i=0; i<size; i++ ) {
+                    int v = members[i];
+                    for( int j=degree(v)-1; j>=0; j-- ) {
+                        int e = incident(v,j);
+                        if(!inTreeNode[other(e,v)] && (best<0 || slack(e)<slack(best)))
+                            best = e;
+                    }
+                }
+                if(best<0)  break;  // the component is spanned
+
+                // make it tight by moving the tree
+                int delta = inTreeNode[tail[best]] ? slack(best) : -slack(best);
+                for( int i=0; i<size; i++ )
+                    rank[members[i]] += delta;
+            }
+        }
+    }
+
+    /**
+     * Computes the parents, the postorder numbers, the levels and the cut values
+     * from the current set of tree edges.
+     */
+    private void initTree() {
+        Arrays.fill(parentEdge,-1);
+        int k=0, first=stamp+1;
+        for( int r=0; r<n; r++ ) {
+            if(visited[r]>=first)   continue;   // already in a tree
+            root[r] = r;
+            k = number(r,k)+1;
+        }
+    }
+
+    /**
+     * Recomputes the subtree of the given vertex after its tree edges have changed.
+     * The vertices in the subtree stay the same, so the rest of the tree is unaffected.
+     */
+    private void updateTree(int top) {
+        number(top,low[top]);
+    }
+
+    /**
+     * Walks the tree from the given vertex, away from its parent, and assigns the parents,
+     * the postorder numbers from k, the levels relative to the vertex, and the cut values.
+     *
+     * @return
+     *      the postorder number of the vertex.
+     */
+    private int number(int top, int k) {
+        int mark = ++stamp;
+        visited[top] = mark;
+        if(parentEdge[top]>=0)
+            visited[other(parentEdge[top],top)] = mark;
+        low[top] = k;
+
+        int sp=0;
+        stack[sp] = top;
+        cursor[sp++] = 0;
+        while(sp>0) {
+            int v = stack[sp-1];
+            if(cursor[sp-1]<degree(v)) {
+                int e = incident(v,cursor[sp-1]++);
+                int w = other(e,v);
+                if(inTree[e] && visited[w]!=mark) {
+                    visited[w] = mark;
+                    parentEdge[w] = e;
+                    root[w] = root[top];
+                    // the tree edge is tight
+                    rank[w] = tail[e]==v ? rank[v]+1 : rank[v]-1;
+                    low[w] = k;
+                    stack[sp] = w;
+                    cursor[sp++] = 0;
+                }
+            } else {
+                sp--;
+                lim[v] = k;
+                postOrder[k++] = v;
+            }
+        }
+
+        // cut values, from the leaves up
+        for( int i=low[top]; i<k; i++ ) {
+            int v = postOrder[i];
+            if(parentEdge[v]>=0)
+                cutValue[parentEdge[v]] = cutValue(v);
+        }
+        return k-1;
+    }
+
+    /**
+     * The least common ancestor of the two vertices in the tree.
+     */
+    private int commonAncestor(int v, int w) {
+        while(!isDescendant(w,v))
+            v = other(parentEdge[v],v);
+        return v;
+    }
+
+    /**
+     * Marks of vertices visited by {@link #number(int, int)}, which are the stamp of the walk.
+     */
+    private final int[] visited;
+    private int stamp;
+    private final int[] stack, cursor;
+
+    private int degree(int v) {
+        return g.fwdStart[v+1]-g.fwdStart[v] + inStart[v+1]-inStart[v];
+    }
+
+    /**
+     * i-th edge incident to v.
+     */
+    private int incident(int v, int i) {
+        int out = g.fwdStart[v+1]-g.fwdStart[v];
+        return i<out ? g.fwdStart[v]+i : inEdges[inStart[v]+i-out];
+    }
+
+    /**
+     * Cut value of the tree edge between v and its parent,
+     * given the cut values of the tree edges to its children.
+     */
+    private int cutValue(int v) {
+        int pe = parentEdge[v];
+        boolean childIsTail = tail[pe]==v;
+        int c = 1;
+        for( int i=degree(v)-1; i>=0; i-- ) {
+            int e = incident(v,i);
+            if(e==pe)   continue;
+            boolean pointsToHead = (tail[e]==v)==childIsTail;
+            c += pointsToHead ? 1 : -1;
+            if(inTree[e] && parentEdge[other(e,v)]==e)
+                c += pointsToHead ? -cutValue[e] : cutValue[e];
+        }
+        return c;
+    }
+
+    /**
+     * Finds a tree edge with a negative cut value, or -1 if the tree is optimal.
+     * The search continues from where the last one ended, as suggested in the paper.
+     */
+    private int leaveEdge() {
+        int m = tail.length;
+        for( int i=0; i<m; i++ ) {
+            int e = (search+i)%m;
+            if(inTree[e] && cutValue[e]<0) {
+                search = e+1;
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    private int search;
+
+    /**
+     * Finds the non-tree edge with the smallest slack that reconnects the two parts of the tree
+     * after the tree edge e is removed.
+     */
+    private int enterEdge(int e) {
+        // the part of the tree below e
+        int sub = parentEdge[tail[e]]==e ? tail[e] : head[e];
+        // if it's on the tail side, look for edges going the other way, and vice versa
+        boolean flip = sub==head[e];
+
+        // every candidate has one end in the subtree, so scan the edges of the smaller side
+        int r = root[sub];
+        int subSize = lim[sub]-low[sub]+1;
+        boolean inside = subSize*2 <= lim[r]-low[r]+1;
+        int best=-1;
+        for( int i=low[r]; i<=lim[r]; i++ ) {
+            int v = postOrder[i];
+            if(isDescendant(v,sub)!=inside)    continue;
+            for( int j=degree(v)-1; j>=0; j-- ) {
+                int f = incident(v,j);
+                if(inTree[f])   continue;
+                if(isDescendant(tail[f],sub)==flip && isDescendant(head[f],sub)!=flip)
+                    if(best<0 || slack(f)<slack(best))
+                        best = f;
+            }
+        }
+        assert best>=0;
+        return best;
+    }
+
+    private boolean isDescendant(int v, int of) {
+        return low[of]<=lim[v] && lim[v]<=lim[of];
+    }
+
+    /**
+     * Moves each component back to where it started.
+     */
+    private void normalize(int[] before, EdgeDirection dir) {
+        boolean forward = dir==EdgeDirection.FORWARD;
+        int[] was = new int[n], now = new int[n];
+        Arrays.fill(was, forward ? Integer.MAX_VALUE : Integer.MIN_VALUE);
+        Arrays.fill(now, forward ? Integer.MAX_VALUE : Integer.MIN_VALUE);
+        for( int v=0; v<n; v++ ) {
+            int r = root[v];
+            was[r] = forward ? Math.min(was[r],before[v]) : Math.max(was[r],before[v]);
+            now[r] = forward ? Math.min(now[r],rank[v]) : Math.max(now[r],rank[v]);
+        }
+        for( int v=0; v<n; v++ )
+            rank[v] += was[root[v]]-now[root[v]];
+    }
+}
@@ -3,15 +3,20 @@ package org.kohsuke.graph_layouter.impl;
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.FINER;
 
+import org.kohsuke.graph_layouter.Deadline;
 import org.kohsuke.graph_layouter.impl.OrderingHeuristic.WeightedMedian;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.*;
 
 /**
@@ -23,8 +28,12 @@ import java.util.logging.*;
  *
  * @author Kohsuke Kawaguchi
  */
-public class OrderAssigner {
+public class OrderAssigner implements CrossingMinimizer {
     private final OrderingHeuristic orderingHeuristic;
+    private ForkJoinPool pool;
+    private boolean flipFirst = true;
+    private boolean parallelTranspose;
+    private Deadline deadline;
     private static final Logger LOGGER = Logger.getLogger(OrderAssigner.class.getName());
 
     public OrderAssigner(OrderingHeuristic orderingHeuristic) {
@@ -35,27 +44,82 @@ public class OrderAssigner {
         this(new WeightedMedian());
     }
 
+    /**
+     * Sets the pool to count crossings in parallel.
+     * This pool is also used by {@link #setParallelTranspose(boolean) the parallel transposition}.
+     *
+     * @param pool
+     *      If null, which is the default, crossings are counted on the calling thread.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Transposes the even levels and then the odd levels in parallel on the pool
+     * set by {@link #setPool(ForkJoinPool)}.
+     *
+     * <p>
+     * The result is deterministic, but it's not the same as the sequential transposition,
+     * which sees the effect of swaps on the previous level right away.
+     */
+    public void setParallelTranspose(boolean parallelTranspose) {
+        this.parallelTranspose = parallelTranspose;
+    }
+
+    /**
+     * Controls how vertices with the same weight/crossing are ordered.
+     *
+     * @param flipFirst
+     *      If true, which is the default, the first two sweeps of each iteration flip
+     *      such vertices and the last two keep them. If false, it's the other way around.
+     */
+    public void setFlipFirst(boolean flipFirst) {
+        this.flipFirst = flipFirst;
+    }
+
+    /**
+     * Sets the deadline of the computation.
+     *
+     * <p>
+     * When the deadline expires, the computation stops and the best ordering found so far is restored.
+     *
+     * @param deadline
+     *      If null, which is the default, the computation runs until it stops improving.
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
     public <T> LevelMap<T> layout(Collection<Vertex<T>> graph) {
         LevelMap<T> lm = new LevelMap<T>(graph);
         layout(lm);
         return lm;
     }
 
-    /*package*/ <T> void layout(LevelMap<T> lm) {
+    public <T> void layout(LevelMap<T> lm) {
+        // only needed to fall back to when the deadline expires
+        Best<T> best = deadline!=null ? new Best<T>(lm) : null;
+        Scratch<T> scratch = orderingHeuristic instanceof OrderingHeuristic.Primitive
+                ? new Scratch<T>(lm,(OrderingHeuristic.Primitive)orderingHeuristic) : null;
+
         for(int i=0; i<MAX_ITERATION; i++) {
-            int xing = lm.countCrossing();
+            int xing = countCrossing(lm);
             if(LOGGER.isLoggable(FINE)) {
-                LOGGER.fine("Starting "+i+"th iteration: xing="+lm.countCrossing());
+                LOGGER.fine("Starting "+i+"th iteration: xing="+countCrossing(lm));
                 LOGGER.fine("Graph=\n"+lm);
             }
-            reorderAndTranspose(lm);
+            reorderAndTranspose(lm,scratch);
 
             if(LOGGER.isLoggable(FINE)) {
-                LOGGER.fine("Finishing "+i+"th iteration: xing="+lm.countCrossing());
+                LOGGER.fine("Finishing "+i+"th iteration: xing="+countCrossing(lm));
                 LOGGER.fine("Graph=\n"+lm);
             }
 
-            if(xing==lm.countCrossing()) {
+            if(expired(best))
+                return;
+
+            if(xing==countCrossing(lm)) {
                 LOGGER.fine("Terminating as we are not making progress");
                 return; // not making any progress, so terminate early
             }
@@ -64,39 +128,87 @@ public class OrderAssigner {
         // if we are still making progress, run it until we reach optimum.
         // but unlike above, if we see things worsen, cut it right there
         while(true) {
-            int xing = lm.countCrossing();
+            int xing = countCrossing(lm);
             LevelMap<T>.Memento memento = lm.new Memento(); // remember the current ordering in case it's worsen in the next run
 
-            reorderAndTranspose(lm);
+            reorderAndTranspose(lm,scratch);
 
-            int newXing = lm.countCrossing();
+            int newXing = countCrossing(lm);
             if(newXing>xing) {
                 // worsen. abort.
                 memento.restore();
                 return;
             }
+            if(expired(best))
+                return;
             if(newXing==xing)
                 // no improvements
                 return;
         }
     }
 
-    private <T> void reorderAndTranspose(LevelMap<T> lm) {
+    /**
+     * Checks the deadline, and if it has expired, goes back to the best ordering.
+     */
+    private <T> boolean expired(Best<T> best) {
+        if(best==null)  return false;   // no deadline
+        if(!deadline.isExpired()) {
+            best.update();
+            return false;
+        }
+        LOGGER.fine("Terminating as the deadline has expired");
+        best.restore();
+        return true;
+    }
+
+    /**
+     * Remembers the ordering with the fewest crossings seen so far.
+     */
+    private final class Best<T> {
+        private final LevelMap<T> lm;
+        private int xing;
+        private LevelMap<T>.Memento memento;
+
+        Best(LevelMap<T> lm) {
+            this.lm = lm;
+            this.xing = countCrossing(lm);
+            this.memento = lm.new Memento();
+        }
+
+        void update() {
+            int x = countCrossing(lm);
+            if(x<xing) {
+                xing = x;
+                memento = lm.new Memento();
+            }
+        }
+
+        void restore() {
+            if(countCrossing(lm)>xing)
+                memento.restore();
+        }
+    }
+
+    private <T> int countCrossing(LevelMap<T> lm) {
+        return pool!=null ? lm.countCrossing(pool) : lm.countCrossing();
+    }
+
+    private <T> void reorderAndTranspose(LevelMap<T> lm, Scratch<T> scratch) {
         LevelDirection dir = LevelDirection.DOWN;
-        for( int j=0; j<4; j++,dir=dir.opposite() ) {
+        for( int j=0; j<4 && !Deadline.isExpired(deadline); j++,dir=dir.opposite() ) {
             // flip verticies with the same weight/crossing in every other visit
-            boolean flipEqual = j<2;
-            reorder(dir,lm,flipEqual);
+            boolean flipEqual = (j<2)==flipFirst;
+            reorder(dir,lm,flipEqual,scratch);
 
             if(LOGGER.isLoggable(FINER)) {
-                LOGGER.finer("reordered: dir="+dir+",xing="+lm.countCrossing());
+                LOGGER.finer("reordered: dir="+dir+",xing="+countCrossing(lm));
                 LOGGER.finer("Graph=\n"+lm);
             }
 
             transpose(lm,flipEqual);
 
             if(LOGGER.isLoggable(FINER)) {
-                LOGGER.finer("transposed: dir="+dir+",xing="+lm.countCrossing());
+                LOGGER.finer("transposed: dir="+dir+",xing="+countCrossing(lm));
                 LOGGER.finer("Graph=\n"+lm);
             }
         }
@@ -104,11 +216,21 @@ public class OrderAssigner {
 
     /**
      * Reorders vertices of levels by using {@link #orderingHeuristic}.
+     *
+     * @param scratch
+     *      If non-null, reorder with these buffers instead of creating objects.
      */
-    private <T> void reorder(LevelDirection dir, LevelMap<T> lm, boolean flipEqual) {
+    private <T> void reorder(LevelDirection dir, LevelMap<T> lm, boolean flipEqual, Scratch<T> scratch) {
         for(org.kohsuke.graph_layouter.impl.Level<T> lv=dir.first(lm); dir.next(lv)!=null; lv=dir.next(lv)) {
+            if(Deadline.isExpired(deadline))
+                return; // any ordering is valid, so we can stop anywhere
             org.kohsuke.graph_layouter.impl.Level<T> nextLevel=dir.next(lv);
 
+            if(scratch!=null) {
+                scratch.reorder(nextLevel,dir,flipEqual);
+                continue;
+            }
+
             // reorder next level by using the current level as fixed
             List<WeightedVertex<T>> orders = new ArrayList<WeightedVertex<T>>(nextLevel.vertices.size());
             for (Vertex<T> v : nextLevel.vertices) {
@@ -161,37 +283,271 @@ public class OrderAssigner {
         }
     }
 
+    /**
+     * Buffers to reorder levels with a {@link OrderingHeuristic.Primitive} heuristic without creating objects,
+     * allocated once per {@link #layout(LevelMap)} for the widest level.
+     *
+     * <p>
+     * Edges are looked up in an {@link IntGraph} snapshot. Vertices are sorted by long keys that pack
+     * the weight in the upper half and the tie breaker in the lower half, by a radix sort.
+     * The result is the same as that of the {@link WeightedVertex} based path.
+     */
+    private static final class Scratch<T> {
+        private final OrderingHeuristic.Primitive heuristic;
+        private final IntGraph<T> g;
+        /**
+         * Sorted orders of the neighbours of one vertex.
+         */
+        private final int[] orders;
+        private final long[] keys, buf;
+        private final int[] count = new int[257];
+        private final Vertex<T>[] result;
+        private int size;
+        /**
+         * {@link List} view of {@link #result} to pass to {@link Level#reorder(List)}.
+         */
+        private final List<Vertex<T>> resultView = new AbstractList<Vertex<T>>() {
+            public Vertex<T> get(int index) {
+                return result[index];
+            }
+
+            public int size() {
+                return size;
+            }
+        };
+
+        @SuppressWarnings({"unchecked","rawtypes"})
+        Scratch(LevelMap<T> lm, OrderingHeuristic.Primitive heuristic) {
+            this.heuristic = heuristic;
+            List<Vertex<T>> all = new ArrayList<Vertex<T>>();
+            int width=0;
+            for (org.kohsuke.graph_layouter.impl.Level<T> lv : lm.levels()) {
+                all.addAll(lv.vertices);
+                width = Math.max(width,lv.vertices.size());
+            }
+            g = new IntGraph<T>(all);
+
+            int degree=0;
+            for( int i=0; i<g.size(); i++ )
+                degree = Math.max(degree,Math.max(g.fwdStart[i+1]-g.fwdStart[i],g.bwdStart[i+1]-g.bwdStart[i]));
+            orders = new int[degree];
+            keys = new long[width];
+            buf = new long[width];
+            result = new Vertex[width];
+        }
+
+        void reorder(org.kohsuke.graph_layouter.impl.Level<T> lv, LevelDirection dir, boolean flipEqual) {
+            final List<Vertex<T>> vertices = lv.vertices;
+            final int n = vertices.size();
+            final EdgeDirection ed = dir==LevelDirection.DOWN ? EdgeDirection.BACKWARD : EdgeDirection.FORWARD;
+            final int[] adj = g.adj(ed);
+
+            // weigh the vertices. DONT_MOVE ones stay in 'result', and the others go to 'keys'
+            int m=0;
+            for( int j=0; j<n; j++ ) {
+                Vertex<T> v = vertices.get(j);
+                assert v.order==j;
+                int id = g.id(v);
+                int s=g.start(ed,id), e=g.end(ed,id), len=e-s;
+                for( int k=0; k<len; k++ )
+                    orders[k] = g.vertices[adj[s+k]].order;
+                Arrays.sort(orders,0,len);
+
+                float w = heuristic.weight(orders,0,len);
+                if(w==OrderingHeuristic.DONT_MOVE) {
+                    result[j] = v;
+                } else {
+                    result[j] = null;
+                    // stable sort, or the higher order first among the same weight
+                    keys[m++] = key(w, flipEqual ? n-1-j : j);
+                }
+            }
+
+            sort(m);
+
+            // fill the other positions in the sorted order
+            for( int j=0,k=0; j<n; j++ ) {
+                if(result[j]==null) {
+                    int tie = (int)keys[k++];
+                    result[j] = vertices.get(flipEqual ? n-1-tie : tie);
+                }
+            }
+
+            size = n;
+            lv.reorder(resultView);
+            Arrays.fill(result,0,n,null);
+        }
+
+        /**
+         * Packs the weight and the tie breaker into a key whose unsigned order is
+         * the order of {@link Float#compare(float, float)}, then the tie breaker.
+         */
+        private static long key(float w, int tie) {
+            int bits = Float.floatToIntBits(w);
+            bits ^= (bits>>31)&0x7FFFFFFF;  // now the signed int order is the float order
+            bits ^= 0x80000000;             // and now it's the unsigned order
+            return ((long)bits<<32)|tie;
+        }
+
+        /**
+         * Sorts {@code keys[0..m)} as unsigned longs.
+         */
+        private void sort(int m) {
+            if(m<=INSERTION_SORT_THRESHOLD) {
+                for( int i=1; i<m; i++ ) {
+                    long k = keys[i];
+                    int j=i;
+                    for( ; j>0 && keys[j-1]+Long.MIN_VALUE>k+Long.MIN_VALUE; j-- )
+                        keys[j] = keys[j-1];
+                    keys[j] = k;
+                }
+                return;
+            }
+
+            // LSD radix sort, one byte at a time
+            long[] src=keys, dst=buf;
+            for( int shift=0; shift<64; shift+=8 ) {
+                Arrays.fill(count,0);
+                for( int i=0; i<m; i++ )
+                    count[((int)(src[i]>>>shift)&0xFF)+1]++;
+                if(count[((int)(src[0]>>>shift)&0xFF)+1]==m)
+                    continue;   // all the keys have the same byte here
+                for( int i=0; i<256; i++ )
+                    count[i+1] += count[i];
+                for( int i=0; i<m; i++ )
+                    dst[count[(int)(src[i]>>>shift)&0xFF]++] = src[i];
+                long[] t=src; src=dst; dst=t;
+            }
+            if(src!=keys)
+                System.arraycopy(src,0,keys,0,m);
+        }
+
+        private static final int INSERTION_SORT_THRESHOLD = 32;
+    }
+
     private static boolean isDontMove(WeightedVertex v) {
         return v.weight==OrderingHeuristic.DONT_MOVE;
     }
 
     /**
      * Try to swap adjacent nodes and see if that makes any improvement.
+     *
+     * <p>
+     * The effect of each swap is evaluated from the crossing numbers of the adjacent pairs,
+     * which are computed once per level and updated locally as we swap.
      */
     private <T> void transpose(LevelMap<T> lm, boolean flipEqual) {
+        if(pool!=null && parallelTranspose) {
+            transposeInParallel(lm,flipEqual);
+            return;
+        }
+
         boolean improved;
 
         do {
             improved = false;
 
             for (org.kohsuke.graph_layouter.impl.Level<T> lv : lm.levels()) {
-                int xing = lv.getAdjacentCrossings();
-
-                for( int i=0; i<lv.vertices.size()-1; i++ ) {
-                    Vertex<T> v = lv.vertices.get(i);
-                    Vertex<T> w = lv.vertices.get(i+1);
-
-                    int swapXing = lv.getAdjacentSwapCrossing(v, w);
-                    if(swapXing<xing || (flipEqual && swapXing==xing)) {
-                        // swapping two would achieve a better result
-                        lv.swap(v,w);
-                        improved |= swapXing<xing;
-                        xing = swapXing;
-                        assert xing==lv.getAdjacentCrossings();
-                    }
-                }
+                if(Deadline.isExpired(deadline))
+                    return; // each swap keeps the ordering valid, so we can stop anywhere
+                improved |= transpose(lv,flipEqual);
+            }
+        } while(improved && !Deadline.isExpired(deadline));
+    }
+
+    /**
+     * Transposes just the given levels until it stops improving, while the other levels stay as they are.
+     *
+     * <p>
+     * This is for when only a part of an already ordered graph has changed,
+     * as a full {@link #layout(LevelMap)} would reorder everything.
+     */
+    public <T> void transpose(Collection<org.kohsuke.graph_layouter.impl.Level<T>> levels) {
+        boolean improved;
+        do {
+            improved = false;
+            for (org.kohsuke.graph_layouter.impl.Level<T> lv : levels)
+                improved |= transpose(lv,false);
+        } while(improved && !Deadline.isExpired(deadline));
+    }
+
+    /**
+     * Swapping vertices on a level only changes crossings with its two adjacent levels,
+     * so all the even levels can be transposed at the same time while the odd levels stay fixed,
+     * and vice versa.
+     *
+     * <p>
+     * Each level only sees the ordering of the adjacent levels, which is fixed during its phase,
+     * so the result does not depend on how the levels are scheduled.
+     */
+    private <T> void transposeInParallel(LevelMap<T> lm, boolean flipEqual) {
+        List<List<org.kohsuke.graph_layouter.impl.Level<T>>> phases = new ArrayList<List<org.kohsuke.graph_layouter.impl.Level<T>>>();
+        phases.add(new ArrayList<org.kohsuke.graph_layouter.impl.Level<T>>());
+        phases.add(new ArrayList<org.kohsuke.graph_layouter.impl.Level<T>>());
+        int i=0;
+        for (org.kohsuke.graph_layouter.impl.Level<T> lv : lm.levels())
+            phases.get(i++%2).add(lv);
+
+        boolean improved;
+        do {
+            improved = false;
+            for (List<org.kohsuke.graph_layouter.impl.Level<T>> phase : phases)
+                improved |= pool.invoke(new TransposeTask<T>(phase,0,phase.size(),flipEqual));
+        } while(improved && !Deadline.isExpired(deadline));
+    }
+
+    /**
+     * Transposes levels [start,end), none of which may be adjacent to each other.
+     */
+    @SuppressWarnings({"serial"})
+    private final class TransposeTask<T> extends RecursiveTask<Boolean> {
+        private final List<org.kohsuke.graph_layouter.impl.Level<T>> levels;
+        private final int start,end;
+        private final boolean flipEqual;
+
+        TransposeTask(List<org.kohsuke.graph_layouter.impl.Level<T>> levels, int start, int end, boolean flipEqual) {
+            this.levels = levels;
+            this.start = start;
+            this.end = end;
+            this.flipEqual = flipEqual;
+        }
+
+        protected Boolean compute() {
+            if(end-start<=1) {
+                boolean improved = false;
+                for( int i=start; i<end; i++ )
+                    improved |= transpose(levels.get(i),flipEqual);
+                return improved;
             }
-        } while(improved);
+
+            int mid = (start+end)/2;
+            TransposeTask<T> left = new TransposeTask<T>(levels,start,mid,flipEqual);
+            left.fork();
+            boolean right = new TransposeTask<T>(levels,mid,end,flipEqual).compute();
+            return left.join() | right;
+        }
+    }
+
+    /**
+     * Makes a pass of adjacent swaps on a single level.
+     *
+     * @return
+     *      true if the number of crossings has decreased.
+     */
+    private <T> boolean transpose(org.kohsuke.graph_layouter.impl.Level<T> lv, boolean flipEqual) {
+        boolean improved = false;
+        CrossingMatrix<T> cm = new CrossingMatrix<T>(lv);
+
+        for( int i=0; i<lv.vertices.size()-1; i++ ) {
+            assert cm.isConsistent(i);
+            int delta = cm.swapDelta(i);
+            if(delta<0 || (flipEqual && delta==0)) {
+                // swapping two would achieve a better result
+                cm.swap(i);
+                improved |= delta<0;
+            }
+        }
+        return improved;
     }
 
     private static final int MAX_ITERATION = 8;
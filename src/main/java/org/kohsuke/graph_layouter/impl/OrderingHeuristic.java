@@ -23,44 +23,63 @@ public interface OrderingHeuristic {
 
     public static final float DONT_MOVE = -1;
 
+    /**
+     * {@link OrderingHeuristic} that computes the weight only from the orders of the adjacent vertices
+     * in the current level.
+     *
+     * <p>
+     * {@link OrderAssigner} computes such weights from its own arrays, without creating any object.
+     */
+    public interface Primitive extends OrderingHeuristic {
+        /**
+         * @param orders
+         *      {@code orders[start..end)} are the orders of the vertices adjacent to the vertex,
+         *      sorted in the ascending order.
+         * @return
+         *      same as {@link #weight(Vertex, Level, LevelDirection)}.
+         */
+        float weight(int[] orders, int start, int end);
+    }
+
     /**
      * Weighted median algorithm.
      */
-    public class WeightedMedian implements OrderingHeuristic {
+    public class WeightedMedian implements Primitive {
         public <T> float weight(Vertex<T> v, Level<T> current, LevelDirection dir) {
             assert dir.next(current).contains(v);
+            int[] orders = CrossingMatrix.sortedOrders(dir.backwardEdges(v));
+            return weight(orders,0,orders.length);
+        }
 
-            Set<Vertex<T>> fe = dir.backwardEdges(v);
-            Vertex[] edges = fe.toArray(new Vertex[fe.size()]);
-            Vertex.sortByOrder(edges);
-
-            if(edges.length==0) return DONT_MOVE;
+        public float weight(int[] orders, int start, int end) {
+            int len = end-start;
+            if(len==0)  return DONT_MOVE;
 
-            if(edges.length%2==1) {
+            if(len%2==1) {
                 // odd size
-                return edges[edges.length/2].order;
+                return orders[start+len/2];
             }
 
             // even size, so there's left median and right median
-            Vertex medL = edges[edges.length/2-1];
-            Vertex medR = edges[edges.length/2];
+            int medL = orders[start+len/2-1];
+            int medR = orders[start+len/2];
 
-            if(edges.length==2) {
+            if(len==2) {
                 // in the middle
-                return ((float)medL.order+medR.order)/2;
+                return ((float)medL+medR)/2;
             }
 
             // weighted median to favor tightly packed vertices
-            float left = medL.order - edges[0].order;
-            float right= edges[edges.length-1].order - medR.order;
-            return (medL.order*right + medR.order*left)/(left+right);
+            float left = medL - orders[start];
+            float right= orders[end-1] - medR;
+            return (medL*right + medR*left)/(left+right);
         }
     }
 
     /**
      * Barycenter algorithm.
      */
-    public class BaryCenter implements OrderingHeuristic {
+    public class BaryCenter implements Primitive {
         public <T> float weight(Vertex<T> v, Level<T> current, LevelDirection dir) {
             assert dir.next(current).contains(v);
 
@@ -74,5 +93,15 @@ public interface OrderingHeuristic {
 
             return ((float)r)/fe.size();
         }
+
+        public float weight(int[] orders, int start, int end) {
+            if(start==end)  return DONT_MOVE;
+
+            int r=0;
+            for( int i=start; i<end; i++ )
+                r+=orders[i];
+
+            return ((float)r)/(end-start);
+        }
     }
 }
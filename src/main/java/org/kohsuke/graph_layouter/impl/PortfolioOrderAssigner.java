@@ -0,0 +1,280 @@
+package org.kohsuke.graph_layouter.impl;
+
+import org.kohsuke.graph_layouter.Deadline;
+import org.kohsuke.graph_layouter.impl.OrderingHeuristic.BaryCenter;
+import org.kohsuke.graph_layouter.impl.OrderingHeuristic.WeightedMedian;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+
+/**
+ * Runs several independent {@link OrderAssigner} searches and keeps the ordering
+ * with the fewest crossings.
+ *
+ * <p>
+ * The searches differ in the {@link OrderingHeuristic}, in the initial ordering
+ * (the given one, or a random permutation of each level), and in how ties are broken.
+ * Each search works on its own copy of the graph, so they can run concurrently on
+ * an {@link ExecutorService}. A copy is made when its search starts, and is dropped once
+ * a better search is found, so searches that run one by one only hold two copies at a time.
+ *
+ * <p>
+ * Random permutations are derived from the seed and the index of the search, and ties
+ * among the results are broken by the index of the search, so the result only depends on
+ * the number of searches and the seed, not on the threads or the timing.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class PortfolioOrderAssigner implements CrossingMinimizer {
+    private final int searches;
+    private final long seed;
+    private ExecutorService executor;
+    private Deadline deadline;
+
+    /**
+     * @param searches
+     *      Number of independent searches to run.
+     * @param seed
+     *      Seed of the random initial orderings.
+     */
+    public PortfolioOrderAssigner(int searches, long seed) {
+        if(searches<1)
+            throw new IllegalArgumentException("searches must be positive: "+searches);
+        this.searches = searches;
+        this.seed = seed;
+    }
+
+    public PortfolioOrderAssigner() {
+        this(Runtime.getRuntime().availableProcessors(),0);
+    }
+
+    /**
+     * Sets the executor to run searches concurrently.
+     *
+     * @param executor
+     *      If null, which is the default, searches run one by one on the calling thread.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the deadline of the computation, which applies to all the searches.
+     *
+     * <p>
+     * If the calling thread is interrupted, the deadline is cancelled,
+     * so that the searches running on the executor stop too.
+     *
+     * @see OrderAssigner#setDeadline(Deadline)
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    public <T> LevelMap<T> layout(Collection<Vertex<T>> graph) {
+        LevelMap<T> lm = new LevelMap<T>(graph);
+        layout(lm);
+        return lm;
+    }
+
+    public <T> void layout(LevelMap<T> lm) {
+        // searches that are still running when we stop notice it through this
+        Deadline d = deadline!=null ? deadline : Deadline.unbounded();
+        Gate gate = new Gate();
+        List<Search<T>> tasks = new ArrayList<Search<T>>(searches);
+        for( int i=0; i<searches; i++ )
+            tasks.add(new Search<T>(lm,i,d,gate));
+
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>(searches);
+        if(executor!=null) {
+            for (Search<T> t : tasks)
+                futures.add(executor.submit(t));
+        }
+
+        Search<T> best = null;
+        int bestXing = Integer.MAX_VALUE;
+        try {
+            for( int i=0; i<searches; i++ ) {
+                Search<T> t = tasks.set(i,null);    // so that the copy can be dropped if it loses
+                int xing;
+                try {
+                    xing = executor!=null ? futures.get(i).get() : t.call();
+                } catch (InterruptedException e) {
+                    // keep the best ordering among the searches that have completed so far
+                    d.cancel();
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    d.cancel();
+                    Throwable cause = e.getCause();
+                    if(cause instanceof RuntimeException)   throw (RuntimeException)cause;
+                    if(cause instanceof Error)              throw (Error)cause;
+                    throw new IllegalStateException(cause);
+                }
+
+                if(LOGGER.isLoggable(FINE))
+                    LOGGER.fine("Search "+i+" ended with xing="+xing);
+                if(xing<bestXing) {
+                    best = t;
+                    bestXing = xing;
+                }
+            }
+        } finally {
+            for (Future<Integer> f : futures)
+                f.cancel(true);
+            // searches that are still copying the graph finish it before we go on to change it
+            gate.close();
+        }
+
+        if(best!=null) {
+            if(LOGGER.isLoggable(FINE))
+                LOGGER.fine("Picked search "+best.index+": xing="+lm.countCrossing()+"=>"+bestXing);
+            best.copyBack();
+        }
+    }
+
+    /**
+     * Lets the searches read the original graph, until it's closed.
+     * Searches that haven't started copying the graph by then don't run,
+     * and {@link #close()} waits for those that are copying it.
+     */
+    private static final class Gate {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        /**
+         * Guarded by {@link #lock}.
+         */
+        private boolean closed;
+
+        /**
+         * @return
+         *      true if the original graph can be read until {@link #leave()} is called.
+         *      false if it's closed.
+         */
+        boolean enter() {
+            lock.readLock().lock();
+            if(closed) {
+                lock.readLock().unlock();
+                return false;
+            }
+            return true;
+        }
+
+        void leave() {
+            lock.readLock().unlock();
+        }
+
+        void close() {
+            lock.writeLock().lock();
+            try {
+                closed = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * One search on its own copy of the graph.
+     */
+    private final class Search<T> implements Callable<Integer> {
+        private final int index;
+        private final LevelMap<T> original;
+        private final Deadline deadline;
+        private final Gate gate;
+        private final LevelMap<T> copy = new LevelMap<T>();
+        /**
+         * Maps a vertex in {@link #copy} to the vertex in {@link #original}.
+         */
+        private final Map<Vertex<T>,Vertex<T>> back = new IdentityHashMap<Vertex<T>,Vertex<T>>();
+
+        Search(LevelMap<T> original, int index, Deadline deadline, Gate gate) {
+            this.original = original;
+            this.index = index;
+            this.deadline = deadline;
+            this.gate = gate;
+        }
+
+        /**
+         * Fills {@link #copy} from {@link #original}.
+         */
+        private void copy() {
+            Map<Vertex<T>,Vertex<T>> copies = new IdentityHashMap<Vertex<T>,Vertex<T>>();
+            // real vertices first, as dummies refer to them
+            for (Level<T> lv : original.levels())
+                for (Vertex<T> v : lv.vertices)
+                    if(!v.isDummy())
+                        copies.put(v,new Vertex<T>(v.tag,v.size));
+            for (Level<T> lv : original.levels())
+                for (Vertex<T> v : lv.vertices)
+                    if(v.isDummy())
+                        copies.put(v,new Vertex<T>(copies.get(v.source),copies.get(v.sink)));
+
+            for (Level<T> lv : original.levels()) {
+                Level<T> cl = copy.make(lv.n);
+                for (Vertex<T> v : lv.vertices) {
+                    Vertex<T> c = copies.get(v);
+                    c.level = v.level;
+                    for (Vertex<T> w : v.forward)
+                        c.addEdge(copies.get(w));
+                    cl.vertices.add(c);
+                    back.put(c,v);
+                }
+                cl.assignOrder();
+            }
+        }
+
+        public Integer call() {
+            if(!gate.enter())
+                return Integer.MAX_VALUE;   // too late. this never beats a search that has run
+            try {
+                copy();
+            } finally {
+                gate.leave();
+            }
+
+            // the first two searches start from the given ordering
+            if(index>=2) {
+                Random r = new Random(seed+index);
+                for (Level<T> lv : copy.levels()) {
+                    List<Vertex<T>> l = new ArrayList<Vertex<T>>(lv.vertices);
+                    Collections.shuffle(l,r);
+                    lv.reorder(l);
+                }
+            }
+
+            OrderAssigner oa = new OrderAssigner(index%2==0 ? new WeightedMedian() : new BaryCenter());
+            oa.setFlipFirst((index/2)%2==0);
+            oa.setDeadline(deadline);
+            oa.layout(copy);
+            return copy.countCrossing();
+        }
+
+        /**
+         * Applies the ordering of this search to the original graph.
+         */
+        void copyBack() {
+            for (Level<T> lv : copy.levels()) {
+                List<Vertex<T>> l = new ArrayList<Vertex<T>>(lv.vertices.size());
+                for (Vertex<T> c : lv.vertices)
+                    l.add(back.get(c));
+                original.get(lv.n).reorder(l);
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(PortfolioOrderAssigner.class.getName());
+}
@@ -2,11 +2,37 @@ package org.kohsuke.graph_layouter.impl;
 
 import java.util.Collection;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Kohsuke Kawaguchi
  */
 public class ProperTransformer {
+    private boolean concentrate;
+
+    /**
+     * Chooses whether long edges that share an end share dummy vertices, too.
+     *
+     * <p>
+     * With edge concentration, long edges from the same source run down one chain of dummy
+     * vertices, and each edge leaves the chain on the level above its sink. Long edges to the
+     * same sink are merged the same way from below. An edge is merged with the ones that share
+     * its source if there are any, and otherwise with the ones that share its sink.
+     * This cuts the number of dummy vertices, and the crossings counted among them,
+     * when a vertex has many long edges. The waypoints of each edge are still available from
+     * {@link org.kohsuke.graph_layouter.Layout#edge(Object, Object)}.
+     *
+     * <p>
+     * A dummy vertex on a chain shared by the edges from the same source has no {@link Vertex#sink},
+     * and one on a chain shared by the edges to the same sink has no {@link Vertex#source}.
+     *
+     * @param concentrate
+     *      false by default, in which case each long edge gets its own chain.
+     */
+    public void setConcentrate(boolean concentrate) {
+        this.concentrate = concentrate;
+    }
+
     /**
      * Makes the graph "proper" by inserting dummy nodes.
      *
@@ -15,7 +41,22 @@ public class ProperTransformer {
      * This alters the given {@link Collection}.
      */
     public <T> void makeProper(Collection<Vertex<T>> graph) {
-        for (Vertex<T> v : new ArrayList<Vertex<T>>(graph)) {// copy first since we'll modify graph
+        List<Vertex<T>> vertices = new ArrayList<Vertex<T>>(graph); // copy first since we'll modify graph
+
+        if(concentrate) {
+            for (Vertex<T> v : vertices) {
+                List<Vertex<T>> sinks = longEdges(v,v.forward);
+                if(sinks.size()>1)
+                    bundle(graph,v,sinks,EdgeDirection.FORWARD);
+            }
+            for (Vertex<T> w : vertices) {
+                List<Vertex<T>> sources = longEdges(w,w.backward);
+                if(sources.size()>1)
+                    bundle(graph,w,sources,EdgeDirection.BACKWARD);
+            }
+        }
+
+        for (Vertex<T> v : vertices) {
             for (Vertex<T> w : new ArrayList<Vertex<T>>(v.forward)) {// copy first since we'll modify graph
                 assert v.level<w.level;
                 if(w.level-v.level>1) {
@@ -36,4 +77,54 @@ public class ProperTransformer {
             }
         }
     }
+
+    /**
+     * Lists the other ends of the long edges of v among the given edges.
+     */
+    private <T> List<Vertex<T>> longEdges(Vertex<T> v, Collection<Vertex<T>> edges) {
+        List<Vertex<T>> r = new ArrayList<Vertex<T>>();
+        for (Vertex<T> w : edges)
+            if(Math.abs(w.level-v.level)>1)
+                r.add(w);
+        return r;
+    }
+
+    /**
+     * Replaces the long edges between v and the given vertices by one chain of dummy vertices,
+     * which starts at v and goes as far as the farthest of them. Each edge leaves the chain
+     * on the level next to its other end.
+     *
+     * @param dir
+     *      {@link EdgeDirection#FORWARD} if v is the source of the edges and the chain goes down,
+     *      {@link EdgeDirection#BACKWARD} if v is the sink and the chain goes up.
+     */
+    private <T> void bundle(Collection<Vertex<T>> graph, Vertex<T> v, List<Vertex<T>> ends, EdgeDirection dir) {
+        final int sign = dir.sign();
+        int farthest = v.level;
+        for (Vertex<T> w : ends) {
+            if(dir==EdgeDirection.FORWARD)  v.removeEdge(w);
+            else                            w.removeEdge(v);
+            farthest = sign*Math.max(sign*farthest,sign*w.level);
+        }
+
+        Vertex<T> prev = v;
+        for( int i=v.level+sign; i!=farthest; i+=sign ) {
+            Vertex<T> u = dir==EdgeDirection.FORWARD ? new Vertex<T>(v,null) : new Vertex<T>(null,v);
+            graph.add(u);
+            u.level = i;
+            link(prev,u,dir);
+            for (Vertex<T> w : ends)
+                if(w.level==i+sign)
+                    link(u,w,dir);
+            prev = u;
+        }
+    }
+
+    /**
+     * Adds an edge from v to w if dir is {@link EdgeDirection#FORWARD}, or from w to v otherwise.
+     */
+    private <T> void link(Vertex<T> v, Vertex<T> w, EdgeDirection dir) {
+        if(dir==EdgeDirection.FORWARD)  v.addEdge(w);
+        else                            w.addEdge(v);
+    }
 }
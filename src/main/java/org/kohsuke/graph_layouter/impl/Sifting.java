@@ -0,0 +1,146 @@
+package org.kohsuke.graph_layouter.impl;
+
+import org.kohsuke.graph_layouter.Deadline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+
+/**
+ * Reduces edge crossings by sifting [MSM99].
+ *
+ * <p>
+ * Each vertex in turn is taken out of its level and put back at the position that minimizes
+ * the crossings with the two adjacent levels, while the other vertices keep their relative order.
+ * Vertices with more edges are sifted first. Levels are visited top-down and then bottom-up,
+ * until a round makes no improvement.
+ *
+ * <p>
+ * The position is chosen from the crossing numbers c(u,v) (see {@link CrossingMatrix}):
+ * moving a vertex x to the right over its neighbour y changes the crossings by c(y,x)-c(x,y),
+ * so all the positions are evaluated in a single scan.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class Sifting implements CrossingMinimizer {
+    private Deadline deadline;
+
+    /**
+     * Sets the deadline of the computation.
+     * Since sifting never makes things worse, the ordering at that point is the best one so far.
+     *
+     * @param deadline
+     *      If null, which is the default, the computation runs until it stops improving.
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    public <T> LevelMap<T> layout(Collection<Vertex<T>> graph) {
+        LevelMap<T> lm = new LevelMap<T>(graph);
+        layout(lm);
+        return lm;
+    }
+
+    public <T> void layout(LevelMap<T> lm) {
+        int xing = lm.countCrossing();
+        for( int i=0; i<MAX_ITERATION; i++ ) {
+            for (Level<T> lv : LevelDirection.DOWN.scan(lm)) {
+                if(Deadline.isExpired(deadline))    return;
+                sift(lv);
+            }
+            for (Level<T> lv : LevelDirection.UP.scan(lm)) {
+                if(Deadline.isExpired(deadline))    return;
+                sift(lv);
+            }
+
+            int newXing = lm.countCrossing();
+            if(LOGGER.isLoggable(FINE))
+                LOGGER.fine("After "+i+"th iteration: xing="+xing+"=>"+newXing);
+            if(newXing>=xing)
+                return; // sifting never makes things worse, so this means we are done
+            xing = newXing;
+        }
+    }
+
+    /**
+     * Sifts all the vertices of the given level.
+     *
+     * @return
+     *      true if the ordering has changed.
+     */
+    private <T> boolean sift(Level<T> lv) {
+        final int sz = lv.vertices.size();
+        if(sz<2)    return false;
+
+        // current ordering, and the sorted orders of neighbours on the adjacent levels
+        List<Vertex<T>> vertices = new ArrayList<Vertex<T>>(lv.vertices);
+        List<int[]> up = new ArrayList<int[]>(sz);
+        List<int[]> down = new ArrayList<int[]>(sz);
+        for (Vertex<T> v : vertices) {
+            up.add(CrossingMatrix.sortedOrders(v.backward));
+            down.add(CrossingMatrix.sortedOrders(v.forward));
+        }
+
+        // vertices with more edges first
+        @SuppressWarnings({"unchecked","rawtypes"})
+        Vertex<T>[] siftOrder = vertices.toArray(new Vertex[sz]);
+        Arrays.sort(siftOrder,BY_DEGREE);
+
+        boolean changed = false;
+        for (Vertex<T> x : siftOrder) {
+            int p = vertices.indexOf(x);
+            int[] xu = up.remove(p);
+            int[] xd = down.remove(p);
+            vertices.remove(p);
+
+            // crossings between x and the other vertices, relative to x at the leftmost position
+            int cost=0, bestCost=0, best=0, costAtP=0;
+            for( int q=0; q<sz-1; q++ ) {
+                int[] yu = up.get(q);
+                int[] yd = down.get(q);
+                // move x over the q-th vertex
+                cost += CrossingMatrix.crossing(yu,xu) + CrossingMatrix.crossing(yd,xd)
+                      - CrossingMatrix.crossing(xu,yu) - CrossingMatrix.crossing(xd,yd);
+                if(q+1==p)
+                    costAtP = cost;
+                if(cost<bestCost) {
+                    bestCost = cost;
+                    best = q+1;
+                }
+            }
+
+            // only move if that's a strict improvement, to avoid moving back and forth
+            if(bestCost<costAtP && best!=p) {
+                p = best;
+                changed = true;
+            }
+            vertices.add(p,x);
+            up.add(p,xu);
+            down.add(p,xd);
+        }
+
+        if(changed)
+            lv.reorder(vertices);
+        return changed;
+    }
+
+    private static final Comparator<Vertex<?>> BY_DEGREE = new Comparator<Vertex<?>>() {
+        public int compare(Vertex<?> lhs, Vertex<?> rhs) {
+            int l = lhs.forward.size()+lhs.backward.size();
+            int r = rhs.forward.size()+rhs.backward.size();
+            if(l>r) return -1;
+            if(l<r) return +1;
+            return 0;
+        }
+    };
+
+    private static final int MAX_ITERATION = 8;
+
+    private static final Logger LOGGER = Logger.getLogger(Sifting.class.getName());
+}
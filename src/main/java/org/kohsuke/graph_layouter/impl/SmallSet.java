@@ -0,0 +1,100 @@
+package org.kohsuke.graph_layouter.impl;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link java.util.Set} on a plain array, for the edges of dummy vertices.
+ *
+ * <p>
+ * A dummy vertex usually has exactly one edge in each direction, where a {@link java.util.LinkedHashSet}
+ * costs some 200 bytes for its map, table and entry. This costs one small array.
+ * Look up is linear, so this is only meant for sets that stay small.
+ * The iteration order is the insertion order, as in {@link java.util.LinkedHashSet}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class SmallSet<E> extends AbstractSet<E> {
+    private Object[] elements;
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(Object o) {
+        return indexOf(o)>=0;
+    }
+
+    private int indexOf(Object o) {
+        for( int i=0; i<size; i++ )
+            if(elements[i].equals(o))
+                return i;
+        return -1;
+    }
+
+    public boolean add(E e) {
+        if(e==null)
+            throw new NullPointerException();
+        if(contains(e))
+            return false;
+        if(elements==null)
+            elements = new Object[1];
+        else if(size==elements.length)
+            elements = Arrays.copyOf(elements,size*2);
+        elements[size++] = e;
+        return true;
+    }
+
+    public boolean remove(Object o) {
+        int i = indexOf(o);
+        if(i<0) return false;
+        removeAt(i);
+        return true;
+    }
+
+    private void removeAt(int i) {
+        System.arraycopy(elements,i+1,elements,i,size-i-1);
+        elements[--size] = null;
+    }
+
+    public void clear() {
+        elements = null;
+        size = 0;
+    }
+
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int next;
+            private int expectedSize = size;
+            private boolean canRemove;
+
+            public boolean hasNext() {
+                return next<size;
+            }
+
+            @SuppressWarnings({"unchecked"})
+            public E next() {
+                if(expectedSize!=size)
+                    throw new ConcurrentModificationException();
+                if(next>=size)
+                    throw new NoSuchElementException();
+                canRemove = true;
+                return (E)elements[next++];
+            }
+
+            public void remove() {
+                if(!canRemove)
+                    throw new IllegalStateException();
+                if(expectedSize!=size)
+                    throw new ConcurrentModificationException();
+                canRemove = false;
+                removeAt(--next);
+                expectedSize = size;
+            }
+        };
+    }
+}
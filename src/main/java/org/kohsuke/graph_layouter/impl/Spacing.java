@@ -0,0 +1,20 @@
+package org.kohsuke.graph_layouter.impl;
+
+/**
+ * Spacing between {@link Vertex}s, shared by the algorithms that assign coordinates.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class Spacing {
+    /**
+     * Minimum space required between {@link Vertex}s on the same level.
+     */
+    static final int X_GAP = 10;
+
+    /**
+     * Space between two adjacent levels.
+     */
+    static final int Y_GAP = 10;
+
+    private Spacing() {}
+}
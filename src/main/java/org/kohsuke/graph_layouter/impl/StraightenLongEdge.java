@@ -1,8 +1,14 @@
 package org.kohsuke.graph_layouter.impl;
 
-import java.util.Set;
+import org.kohsuke.graph_layouter.Deadline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Logger;
 
+import static org.kohsuke.graph_layouter.impl.Spacing.X_GAP;
+
 /**
  * Looks for long line and tries to straighten them.
  *
@@ -13,93 +19,260 @@ import java.util.logging.Logger;
  * @author Kohsuke Kawaguchi
  */
 public class StraightenLongEdge<T> {
+    private Deadline deadline;
+
     /**
-     * Minimum space required between {@link Vertex}s.
+     * Sets the deadline of the computation.
+     * Each straightening keeps the layout valid, so the computation can stop anywhere.
      *
-     * TODO: consolidate with {@link Coordinator#xGap}
+     * @param deadline
+     *      If null, which is the default, the computation runs until it stops improving.
      */
-    private final int xGap = 10;
-
-    private final int yGap = 10;
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
 
     public void layout(LevelMap<T> lm) {
-        boolean improving;
+        Chains c = new Chains(lm);
+        int count = c.run();
+        LOGGER.fine(String.format("Straightened %d times",count));
+    }
+
+    /**
+     * Long edges, as chains of dummy vertices between two real vertices, and the worklist of them.
+     * Each dummy vertex belongs to exactly one chain.
+     *
+     * <p>
+     * A chain is straightened by moving the run of dummy vertices next to one of its ends to the
+     * X coordinate of the next vertex, as long as the run doesn't get past its neighbours.
+     * This removes a bend, or moves it to the end of the chain, where it's less visible.
+     * But a move that only moves the bend from one end to the other is not made,
+     * so a chain doesn't flip between being aligned with its upper end and its lower end:
+     * <pre>
+     *   x         x
+     *   |          \
+     *   |           |
+     *    \          |
+     *     y         y
+     * </pre>
+     * Each move reduces the number of bends between dummy vertices, or failing that,
+     * the number of bends at the ends. So the computation always ends, after a number of moves
+     * linear to the number of dummy vertices.
+     * A chain is revisited only when it moved, or when one of its neighbours moved.
+     */
+    private final class Chains {
+        final IntGraph<T> g;
+        /**
+         * Vertices of the chain i are {@code path[start[i]..start[i+1])}, from the upper end to the lower end,
+         * including the two non-dummy ends.
+         */
+        final int[] start, path;
+        /**
+         * Chain that each dummy vertex belongs to, or -1 for real vertices.
+         */
+        final int[] chainOf;
+        /**
+         * Levels, indexed by {@link Level#n}-{@link #base}.
+         */
+        final List<Level<T>> levels;
+        final int base;
 
-        /*
-            TODO: if there are enough space, single line can be both top-aligned and bottom-aligned:
+        /**
+         * Ring buffer of chains to visit. Each chain is in it at most once.
+         */
+        final int[] queue;
+        final boolean[] queued;
+        int head, size;
 
-              x         x
-              |          \
-              |           |
-               \          |
-                y         y
+        Chains(LevelMap<T> lm) {
+            List<Vertex<T>> all = new ArrayList<Vertex<T>>();
+            levels = new ArrayList<Level<T>>(lm.levels());
+            for (Level<T> lv : levels)
+                all.addAll(lv.vertices);
+            base = levels.isEmpty() ? 0 : levels.get(0).n;
+            g = new IntGraph<T>(all);
 
-            so this algorithm will never terminate. for now, set a cap of iteration, but a better
-            way to detect this is preferred.
+            int n = g.size(), nChains=0, len=0;
+            for( int v=0; v<n; v++ ) {
+                if(isDummy(v))  len++;
+                else
+                    for( int e=g.fwdStart[v]; e<g.fwdStart[v+1]; e++ )
+                        if(isTop(v,g.fwdAdj[e]))
+                            nChains++;
+            }
 
-            TODO: performance improvement: there gotta be a way to order edges that minimizes
-            the # of iterations. left-to-right or right-to-left scan.
-         */
-        int count=0;
-        do {
-            improving = false;
-            for (Level<T> lv : lm.levels()) {
-                for (Vertex<T> v : lv.vertices) {
-                    if (v.isDummy())    continue;
-                    for (Vertex<T> w : v.forward) {
-                        improving |= straighten(lv,v,w,EdgeDirection.FORWARD);
-                    }
-                    for (Vertex<T> w : v.backward) {
-                        improving |= straighten(lv,v,w,EdgeDirection.BACKWARD);
+            // in the order of the upper ends on the levels
+            start = new int[nChains+1];
+            path = new int[len+2*nChains];
+            chainOf = new int[n];
+            Arrays.fill(chainOf,-1);
+            int c=0, k=0;
+            for( int v=0; v<n; v++ ) {
+                if(isDummy(v))  continue;
+                for( int e=g.fwdStart[v]; e<g.fwdStart[v+1]; e++ ) {
+                    int w = g.fwdAdj[e];
+                    if(!isTop(v,w)) continue;
+                    start[c] = k;
+                    path[k++] = v;
+                    for( ; isDummy(w); w=next(w) ) {
+                        assert chainOf[w]<0;
+                        chainOf[w] = c;
+                        path[k++] = w;
                     }
+                    path[k++] = w;
+                    c++;
                 }
             }
-        } while (improving && count++ < 10);
-        LOGGER.fine(String.format("Looped %d times",count));
-    }
+            start[c] = k;
+            assert c==nChains && k==path.length;
 
-    /**
-     * @return
-     *      true if the edge was straightened, false if nothing was touched.
-     */
-    private boolean straighten(final Level<T> lv, final Vertex<T> v, final Vertex<T> w, final EdgeDirection dir) {
-        assert lv.contains(v);
+            queue = new int[nChains];
+            queued = new boolean[nChains];
+            for( c=0; c<nChains; c++ )
+                offer(c);
+        }
 
-        for (Vertex<T> u=w; true; ) {
-            if (u.pos.x!=w.pos.x) {
-                final int ideal = u.pos.x;
+        private boolean isDummy(int v) {
+            return g.vertices[v].isDummy();
+        }
 
-                // to see if we can move virtual nodes a=[w,...u) to u.pos.x,
-                // verify that doing so will not violate the relative vertices positions within the same rank
-                Level<T> av = lv.forward(dir);
-                for (Vertex<T> a=w; a!=u; a=singleton(dir.getEdges(a)), av=av.forward(dir)) {
-                    int pos = av.indexOf(a);
-                    assert pos>=0 : "a must belongs to this level";
+        /**
+         * Checks if w is the top dummy vertex of a chain whose upper end is v.
+         *
+         * <p>
+         * Without {@link ProperTransformer#setConcentrate(boolean) edge concentration}, this is any dummy
+         * below a real vertex. Chains shared by edges to the same sink also take in edges from below
+         * their tops, and the top can have several vertices above it, of which the first one is the end.
+         */
+        private boolean isTop(int v, int w) {
+            if(!isDummy(w)) return false;
+            for( int e=g.bwdStart[w]; e<g.bwdStart[w+1]; e++ )
+                if(isDummy(g.bwdAdj[e]))
+                    return false;
+            return g.bwdAdj[g.bwdStart[w]]==v;
+        }
 
-                    int before = pos==0 ? Integer.MIN_VALUE /* no left constraint */ : av.vertices.get(pos - 1).bottomRight().x+xGap;
-                    int after  = pos==av.vertices.size()-1 ? Integer.MAX_VALUE /* no right constraint */ : av.vertices.get(pos+1).topLeft().x -xGap;
+        /**
+         * The vertex after the dummy vertex w in its chain, which is the dummy vertex below it if any,
+         * or else the first vertex below it. A chain shared by edges from the same source has
+         * other vertices below it, where the edges leave the chain.
+         */
+        private int next(int w) {
+            for( int e=g.fwdStart[w]; e<g.fwdStart[w+1]; e++ )
+                if(isDummy(g.fwdAdj[e]))
+                    return g.fwdAdj[e];
+            return g.fwdAdj[g.fwdStart[w]];
+        }
 
-                    if (!lte_lte(before, ideal, after))
-                        return false;   // can't move without swapping the node
-                }
+        private int x(int i) {
+            return g.vertices[path[i]].pos.x;
+        }
+
+        private void offer(int c) {
+            if(queued[c])   return;
+            queued[c] = true;
+            queue[(head+size++)%queue.length] = c;
+        }
 
-                // looks good, move them
-                for (Vertex<T> a=w; a!=u; a=singleton(dir.getEdges(a))) {
-                    a.pos.x = ideal;
+        private int poll() {
+            int c = queue[head];
+            head = (head+1)%queue.length;
+            size--;
+            queued[c] = false;
+            return c;
+        }
+
+        /**
+         * Straightens chains until nothing can be improved.
+         *
+         * @return
+         *      the number of moves made.
+         */
+        int run() {
+            int count=0;
+            while(size>0 && !Deadline.isExpired(deadline)) {
+                int c = poll();
+                if(straighten(c,true) || straighten(c,false)) {
+                    count++;
+                    offer(c);
                 }
-                return true;
             }
+            return count;
+        }
+
+        /**
+         * Straightens the chain from one end.
+         *
+         * @return
+         *      true if the chain was straightened, false if nothing was touched.
+         */
+        private boolean straighten(int c, boolean fromTop) {
+            final int step = fromTop ? 1 : -1;
+            final int end = fromTop ? start[c] : start[c+1]-1;
+            final int far = fromTop ? start[c+1]-1 : start[c];
 
-            if (u.isDummy())
-                u=singleton(dir.getEdges(u));
-            else
-                return false;
+            // the first run of dummy vertices, [i,k)
+            int i = end+step;
+            int k = skipRun(i,step,far);
+            if(x(k)==x(i))
+                return false;   // straight all the way to the other end
+            if(x(end)==x(i) && k==far)
+                return false;   // this would only move the bend from the other end to this end
+
+            return move(i,k,step,x(k));
         }
-    }
 
-    private Vertex<T> singleton(Set<Vertex<T>> edges) {
-        assert edges.size()==1;
-        return edges.iterator().next();
+        /**
+         * Finds the end of the run of vertices that share the same X coordinate, starting from i.
+         *
+         * @return
+         *      Index of the first vertex with a different X coordinate, or 'far' if none.
+         */
+        private int skipRun(int i, int step, int far) {
+            int x = x(i);
+            do {
+                i += step;
+            } while(i!=far && x(i)==x);
+            return i;
+        }
+
+        /**
+         * Moves dummy vertices [from,to) of the path to the given X coordinate,
+         * if doing so will not violate the relative vertices positions within the same level.
+         */
+        private boolean move(int from, int to, int step, int ideal) {
+            for( int i=from; i!=to; i+=step ) {
+                Vertex<T> a = g.vertices[path[i]];
+                Level<T> lv = levels.get(a.level-base);
+                int pos = lv.indexOf(a);
+                assert pos>=0 : "a must belongs to this level";
+
+                int before = pos==0 ? Integer.MIN_VALUE /* no left constraint */ : lv.vertices.get(pos - 1).bottomRight().x+X_GAP;
+                int after  = pos==lv.vertices.size()-1 ? Integer.MAX_VALUE /* no right constraint */ : lv.vertices.get(pos+1).topLeft().x -X_GAP;
+
+                if (!lte_lte(before, ideal, after))
+                    return false;   // can't move without swapping the node
+            }
+
+            // looks good, move them, and revisit the neighbours that now have a different space
+            for( int i=from; i!=to; i+=step ) {
+                Vertex<T> a = g.vertices[path[i]];
+                a.pos.x = ideal;
+
+                List<Vertex<T>> lv = levels.get(a.level-base).vertices;
+                if(a.order>0)
+                    offerChainOf(lv.get(a.order-1));
+                if(a.order<lv.size()-1)
+                    offerChainOf(lv.get(a.order+1));
+            }
+            return true;
+        }
+
+        private void offerChainOf(Vertex<T> v) {
+            int c = chainOf[g.id(v)];
+            if(c>=0)
+                offer(c);
+        }
     }
 
     private boolean lte_lte(int a, int b, int c) {
@@ -10,13 +10,11 @@ import java.util.Set;
  * @author Kohsuke Kawaguchi
  */
 public final class Vertex<T> {
-    public final Set<Vertex<T>> forward = new LinkedHashSet<Vertex<T>>();
-    public final Set<Vertex<T>> backward = new LinkedHashSet<Vertex<T>>();
-
     /**
-     * Used by {@link Dfs} to mark vertices that are already visited.
+     * Edges of this vertex. For dummy vertices, these are {@link SmallSet}s, as they
+     * usually have just one edge in each direction.
      */
-    Object dfsMarker;
+    public final Set<Vertex<T>> forward, backward;
 
     /**
      * Level of this vertex.
@@ -32,11 +30,6 @@ public final class Vertex<T> {
      */
     int order;
 
-    /**
-     * Cluster that this vertex is in.
-     */
-    Cluster cluster;
-
     /**
      * User object that represents the vertex.
      */
@@ -47,7 +40,9 @@ public final class Vertex<T> {
      * to make the graph proper.
      *
      * If non-null, this represents the ultimate source and sink
-     * of the edge.
+     * of the edge. When {@link ProperTransformer#setConcentrate(boolean) edges are concentrated},
+     * a dummy vertex shared by the edges from one source has null sink, and
+     * one shared by the edges to one sink has null source.
      */
     public final Vertex<T> source,sink;
 
@@ -57,6 +52,11 @@ public final class Vertex<T> {
      */
     public final Dimension size;
 
+    /**
+     * Size of all the dummy vertices, which is shared to save memory. Never modify.
+     */
+    private static final Dimension DUMMY_SIZE = new Dimension(0,0);
+
     /**
      * Position of the center of this vertex in the drawing.
      * This is the ultimate objective of the whole computation.
@@ -67,13 +67,17 @@ public final class Vertex<T> {
         this.tag = tag;
         this.size = size;
         this.source = this.sink = null;
+        this.forward = new LinkedHashSet<Vertex<T>>();
+        this.backward = new LinkedHashSet<Vertex<T>>();
     }
 
     /*package*/ Vertex(Vertex<T> source, Vertex<T> sink) {
         this.tag = null;
-        this.size = new Dimension(0,0);
+        this.size = DUMMY_SIZE;
         this.source = source;
         this.sink = sink;
+        this.forward = new SmallSet<Vertex<T>>();
+        this.backward = new SmallSet<Vertex<T>>();
     }
 
     /**
@@ -99,7 +103,7 @@ public final class Vertex<T> {
 
     public String toString() {
         if (isDummy())
-            return "waypoint["+source.tag+"->"+sink.tag+']';
+            return "waypoint["+(source==null?"*":source.tag)+"->"+(sink==null?"*":sink.tag)+']';
         else
             return tag.toString();
     }
@@ -123,7 +127,7 @@ public final class Vertex<T> {
     }
 
     public boolean isDummy() {
-        return source!=null; // sink!=null would have done, too.
+        return source!=null || sink!=null;
     }
 
     /**
@@ -0,0 +1,129 @@
+package org.kohsuke.graph_layouter.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+@SuppressWarnings({"unchecked"})
+public class CrossingCounterTest extends GraphTestBase {
+    /**
+     * Compares the accumulator tree against the pair-wise definition of crossings.
+     */
+    public void testRandom() {
+        Random r = new Random(0);
+        for( int i=0; i<200; i++ ) {
+            LevelMap<String> lm = randomBilayer(r, 1+r.nextInt(12), 1+r.nextInt(12), r.nextInt(40));
+            Level<String> top = lm.get(0), bottom = lm.get(1);
+
+            assertEquals(bruteForce(top,null,null), top.countCrossings());
+
+            Vertex<String> v = bottom.vertices.get(r.nextInt(bottom.vertices.size()));
+            Vertex<String> w = bottom.vertices.get(r.nextInt(bottom.vertices.size()));
+            assertEquals(bruteForce(top,v,w), Level.countSwapCrossing(top,bottom,v,w,EdgeDirection.FORWARD));
+
+            // swapping for real should give the same result
+            if(v!=w) {
+                int expected = Level.countSwapCrossing(top,bottom,v,w,EdgeDirection.FORWARD);
+                bottom.swap(v,w);
+                assertEquals(expected, top.countCrossings());
+                assertEquals(expected, bottom.getAdjacentCrossings());
+            }
+        }
+    }
+
+    /**
+     * Crossing numbers of adjacent pairs should predict the effect of a swap.
+     */
+    public void testCrossingMatrix() {
+        Random r = new Random(0);
+        for( int i=0; i<100; i++ ) {
+            LevelMap<String> lm = randomBilayer(r, 1+r.nextInt(12), 2+r.nextInt(12), r.nextInt(40));
+            Level<String> top = lm.get(0), bottom = lm.get(1);
+
+            CrossingMatrix<String> cm = new CrossingMatrix<String>(bottom);
+            for( int j=0; j<20; j++ ) {
+                int k = r.nextInt(bottom.vertices.size()-1);
+                int before = top.countCrossings();
+                int delta = cm.swapDelta(k);
+                assertEquals(0, cm.downDelta(k));
+                cm.swap(k);
+                assertEquals(before+delta, top.countCrossings());
+            }
+        }
+    }
+
+    /**
+     * Counting level pairs in parallel should give the same result.
+     */
+    public void testParallel() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Random r = new Random(0);
+            for (String dot : Graph.DOT_FILES) {
+                Graph<String> g = Graph.parseDot(dot);
+                new HierarchyBuilder().assignLevels(g, EdgeDirection.FORWARD);
+                new ProperTransformer().makeProper(g);
+                LevelMap<String> lm = new LevelMap<String>(g);
+
+                for( int i=0; i<5; i++ ) {
+                    for (Level<String> lv : lm.levels()) {
+                        List<Vertex<String>> l = new ArrayList<Vertex<String>>(lv.vertices);
+                        Collections.shuffle(l,r);
+                        lv.reorder(l);
+                    }
+                    int expected = lm.countCrossing();
+                    lm.invalidate();
+                    assertEquals(dot, expected, lm.countCrossing(pool));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static LevelMap<String> randomBilayer(Random r, int nTop, int nBottom, int nEdges) {
+        Graph<String> g = new Graph<String>();
+        Vertex<String>[] top = new Vertex[nTop];
+        Vertex<String>[] bottom = new Vertex[nBottom];
+        for( int i=0; i<nTop; i++ )
+            top[i] = g.makeVertex("t"+i);
+        for( int i=0; i<nBottom; i++ ) {
+            bottom[i] = g.makeVertex("b"+i);
+            bottom[i].level = 1;
+        }
+        for( int i=0; i<nEdges; i++ )
+            top[r.nextInt(nTop)].addEdge(bottom[r.nextInt(nBottom)]);
+
+        LevelMap<String> lm = new LevelMap<String>();
+        for (Vertex<String> v : top)
+            lm.make(0).vertices.add(v);
+        for (Vertex<String> v : bottom)
+            lm.make(1).vertices.add(v);
+        for (Level<String> l : lm.levels())
+            l.assignOrder();
+        return lm;
+    }
+
+    private static int bruteForce(Level<String> lv, Vertex<String> v, Vertex<String> w) {
+        int crossing = 0;
+        for (Vertex<String> a : lv.vertices)
+            for (Vertex<String> b : lv.vertices)
+                if(a.order<b.order)
+                    for (Vertex<String> c : a.forward)
+                        for (Vertex<String> d : b.forward)
+                            if(order(c,v,w)>order(d,v,w))
+                                crossing++;
+        return crossing;
+    }
+
+    private static int order(Vertex<String> c, Vertex<String> v, Vertex<String> w) {
+        if(c==v)    return w.order;
+        if(c==w)    return v.order;
+        return c.order;
+    }
+}
@@ -8,6 +8,7 @@ import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -129,5 +130,48 @@ public class Graph<T> extends LinkedHashSet<Vertex<T>> {
         };
     }
 
+    /**
+     * Fake simplified *.dot parser.
+     */
+    public static Graph<String> parseDot(String resName) throws IOException {
+        Graph<String> g = new Graph<String>();
+        BufferedReader r = new BufferedReader(new InputStreamReader(Graph.class.getResourceAsStream(resName)));
+        String line;
+        while ((line=r.readLine())!=null) {
+            if (!line.contains("->"))   continue;
+
+            Vertex<String> previous = null;
+            for (String token : line.split("->")) {
+                token = token.trim();
+                if (token.endsWith(";"))    token=token.substring(0,token.length()-1);
+                token = token.trim();
+
+                Vertex v = g.makeVertex(unquote(token));
+                if (previous!=null)
+                    previous.addEdge(v);
+                previous = v;
+            }
+        }
+        return g;
+    }
+
+    private static String unquote(String s) {
+        if (s.startsWith("\"") && s.endsWith("\""))
+            return s.substring(1,s.length()-1);
+        return s;
+    }
+
+    /**
+     * Test graphs bundled as resources.
+     */
+    public static final String[] DOT_FILES = {
+        "unixFamilyTree.dot",
+        "graphVizPluginForConfluence.dot",
+        "traceroute.dot",
+        "alla_fiera_dell_est.dot",
+        "aqueousTransmission.dot",
+        "Ballo in Fa diesis minore.dot",
+    };
+
     private static final int MARGIN = 25;
 }
@@ -1,87 +1,514 @@
 package org.kohsuke.graph_layouter.impl;
 
+import org.kohsuke.graph_layouter.Deadline;
 import org.kohsuke.graph_layouter.Direction;
 import org.kohsuke.graph_layouter.Layout;
+import org.kohsuke.graph_layouter.LayoutEngine;
+import org.kohsuke.graph_layouter.LayoutResult;
+import org.kohsuke.graph_layouter.LayoutSession;
+import org.kohsuke.graph_layouter.Packing;
 
-import java.io.BufferedReader;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.io.File;
-import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author Kohsuke Kawaguchi
  */
 public class LayoutTest extends GraphTestBase {
     public void testUnixFamilyTree() throws Exception {
-        Graph<String> g = parseDot("unixFamilyTree.dot");
+        Graph<String> g = Graph.parseDot("unixFamilyTree.dot");
         g.html(layout(g),new File("unixFamilyTree.html"));
     }
 
     public void testGraphVizPluginForConfluence() throws Exception {
-        Graph<String> g = parseDot("graphVizPluginForConfluence.dot");
+        Graph<String> g = Graph.parseDot("graphVizPluginForConfluence.dot");
         g.html(layout(g),new File("graphVizPluginForConfluence.html"));
     }
 
     public void testTraceRoute() throws Exception {
-        Graph<String> g = parseDot("traceroute.dot");
+        Graph<String> g = Graph.parseDot("traceroute.dot");
         g.html(layout(g),new File("traceroute.html"));
     }
 
     // from http://www.fantascienza.net/leonardo/so/lyrics_graph/lyrics_graph.html
     public void testAllaFieraDellEst() throws Exception {
-        Graph<String> g = parseDot("alla_fiera_dell_est.dot");
+        Graph<String> g = Graph.parseDot("alla_fiera_dell_est.dot");
         g.html(layout(g),new File("alla_fiera_dell_est.html"));
     }
 
     // from http://www.fantascienza.net/leonardo/so/lyrics_graph/lyrics_graph.html
     public void testAqueousTransmission() throws Exception {
-        Graph<String> g = parseDot("aqueousTransmission.dot");
+        Graph<String> g = Graph.parseDot("aqueousTransmission.dot");
         g.html(layout(g),new File("aqueousTransmission.html"));
     }
 
         // from http://www.fantascienza.net/leonardo/so/lyrics_graph/lyrics_graph.html
     public void testBalloInFaDiesisMinore() throws Exception {
-        Graph<String> g = parseDot("Ballo in Fa diesis minore.dot");
+        Graph<String> g = Graph.parseDot("Ballo in Fa diesis minore.dot");
         g.html(layout(g),new File("Ballo in Fa diesis minore.html"));
     }
 
-    private Layout<Vertex<String>> layout(Graph<String> g) {
-        Layout<Vertex<String>> layout = new Layout<Vertex<String>>(g.makeNavigator(), Direction.TOPDOWN);
+    /**
+     * Expired deadlines, whether cancelled or by interruption, should still produce a valid layout.
+     */
+    public void testDeadline() throws Exception {
+        for (String dot : Graph.DOT_FILES) {
+            Deadline d = Deadline.unbounded();
+            d.cancel();
+            assertValid(Graph.parseDot(dot), d);
+
+            Thread.currentThread().interrupt();
+            try {
+                assertValid(Graph.parseDot(dot), Deadline.unbounded());
+            } finally {
+                assertTrue(Thread.interrupted()); // the status should be left as is
+            }
+        }
+    }
+
+    /**
+     * {@link BrandesKopf} should produce a valid layout that doesn't depend on the threads,
+     * and draw a long edge straight when nothing is in the way.
+     */
+    public void testBrandesKopf() throws Exception {
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        try {
+            for (String dot : Graph.DOT_FILES) {
+                Graph<String> g = Graph.parseDot(dot);
+                LayoutEngine engine = new LayoutEngine();
+                engine.setCoordinateAssigner(new BrandesKopf());
+                LayoutResult<Vertex<String>> l1 = engine.layout(g.makeNavigator(), Direction.TOPDOWN);
+                assertValid(g, l1);
+
+                BrandesKopf bk = new BrandesKopf();
+                bk.setExecutor(es);
+                Layout<Vertex<String>> l2 = new Layout<Vertex<String>>(g.makeNavigator(), Direction.TOPDOWN, null, bk);
+                for (Vertex<String> v : g)
+                    assertEquals(dot, l1.vertex(v), l2.vertex(v));
+            }
+        } finally {
+            es.shutdown();
+        }
+
+        Graph<String> g = new Graph<String>();
+        Vertex a = g.makeVertex("a");
+        Vertex b = g.makeVertex("b");
+        Vertex c = g.makeVertex("c");
+        Vertex d = g.makeVertex("d");
+        a.addEdges(b,d);
+        b.addEdge(c);
+        c.addEdge(d);
+        Layout<Vertex<String>> l = new Layout<Vertex<String>>(g.makeNavigator(), Direction.TOPDOWN, null, new BrandesKopf());
+        List<Point> points = l.edge(a,d);
+        assertEquals(2, points.size());
+        assertEquals(points.get(0).x, points.get(1).x);
+    }
+
+    /**
+     * A level with thousands of vertices, where each move used to scan the whole level.
+     */
+    public void testWideLevel() throws Exception {
+        Random r = new Random(0);
+        Graph<String> g = new Graph<String>();
+        List<Vertex<String>> top = new ArrayList<Vertex<String>>();
+        for( int i=0; i<60; i++ )
+            top.add(g.makeVertex("t"+i));
+        for( int i=0; i<3000; i++ ) {
+            Vertex<String> v = g.makeVertex("b"+i);
+            top.get(r.nextInt(top.size())).addEdge(v);
+            top.get(r.nextInt(top.size())).addEdge(v);
+        }
+        assertValid(g, Deadline.unbounded());
+    }
+
+    /**
+     * A long edge that can be aligned with either end should stay as it is,
+     * instead of flipping between the two.
+     * <pre>
+     * a -+-> b ---> c -+-> d
+     *    |             |
+     *    +-------------+
+     * </pre>
+     */
+    public void testStraightenLongEdge() throws Exception {
+        Graph<String> g = new Graph<String>();
+        Vertex<String> a = g.makeVertex("a");
+        Vertex<String> b = g.makeVertex("b");
+        Vertex<String> c = g.makeVertex("c");
+        Vertex<String> d = g.makeVertex("d");
+        a.addEdges(b,d);
+        b.addEdge(c);
+        c.addEdge(d);
+        new HierarchyBuilder().assignLevels(g, EdgeDirection.FORWARD);
+        new ProperTransformer().makeProper(g);
+        LevelMap<String> lm = new LevelMap<String>(g);
+
+        Vertex<String> d1=null, d2=null;
         for (Vertex<String> v : g) {
-            v.pos.setLocation(
-                    layout.vertex(v).getCenterX(),
-                    layout.vertex(v).getCenterY());
+            if(!v.isDummy())    continue;
+            if(v.level==1)  d1=v;
+            else            d2=v;
         }
-        return layout;
+        assertNotNull(d1);
+        assertNotNull(d2);
+
+        // plenty of space on both sides of the long edge
+        a.pos.x = 0;
+        d.pos.x = 100;
+        b.pos.x = b.order<d1.order ? -200 : 300;
+        c.pos.x = c.order<d2.order ? -200 : 300;
+
+        d1.pos.x = d2.pos.x = 0;
+        new StraightenLongEdge<String>().layout(lm);
+        assertEquals(0, d1.pos.x);
+        assertEquals(0, d2.pos.x);
+
+        // a bend in the middle goes to an end
+        d2.pos.x = 50;
+        new StraightenLongEdge<String>().layout(lm);
+        assertEquals(d1.pos.x, d2.pos.x);
+        assertTrue(d1.pos.x==0 || d1.pos.x==100);
     }
 
     /**
-     * Fake simplified *.dot parser.
+     * {@link LayoutSession} should keep the layout valid as the graph changes.
      */
-    private Graph<String> parseDot(String resName) throws Exception {
+    public void testSession() throws Exception {
+        Random r = new Random(0);
+        for (String dot : Graph.DOT_FILES) {
+            Graph<String> g = Graph.parseDot(dot);
+            LayoutSession<Vertex<String>> s = new LayoutSession<Vertex<String>>(g.makeNavigator(), Direction.TOPDOWN);
+            for( int i=0; i<30; i++ ) {
+                List<Vertex<String>> old = new ArrayList<Vertex<String>>(g);
+                Vertex<String> v = g.makeVertex("new"+i);
+                s.addVertex(v,v.size);
+                for( int j=0; j<2; j++ ) {
+                    Vertex<String> w = old.get(r.nextInt(old.size()));
+                    if(v.forward.contains(w) || w.forward.contains(v))
+                        continue;   // the session keeps just one edge between two vertices
+                    if(r.nextBoolean()) {
+                        v.addEdge(w);
+                        s.addEdge(v,w);
+                    } else {
+                        w.addEdge(v);
+                        s.addEdge(w,v);
+                    }
+                }
+
+                Vertex<String> x = old.get(r.nextInt(old.size()));
+                if(i%3==0) {
+                    for (Vertex<String> w : new ArrayList<Vertex<String>>(x.forward))
+                        x.removeEdge(w);
+                    for (Vertex<String> u : new ArrayList<Vertex<String>>(x.backward))
+                        u.removeEdge(x);
+                    g.remove(x);
+                    assertTrue(s.removeVertex(x));
+                } else if(!x.forward.isEmpty()) {
+                    Vertex<String> w = x.forward.iterator().next();
+                    x.removeEdge(w);
+                    assertTrue(s.removeEdge(x,w));
+                }
+
+                s.relayout();
+                assertValid(g,s.freeze());
+            }
+        }
+    }
+
+    /**
+     * A new root should go on a new level above its successor, and leave the rest of the layout alone.
+     */
+    public void testSessionNewRoot() throws Exception {
+        for (String dot : Graph.DOT_FILES) {
+            Graph<String> g = Graph.parseDot(dot);
+            new HierarchyBuilder().assignLevels(g, EdgeDirection.FORWARD);
+            new ProperTransformer().makeProper(g);
+            LevelMap<String> lm = new OrderAssigner().layout(g);
+            new Coordinator().layout(lm);
+            IncrementalLayouter<String> il = new IncrementalLayouter<String>(lm);
+
+            List<Vertex<String>> old = new ArrayList<Vertex<String>>();
+            List<Integer> levels = new ArrayList<Integer>();
+            List<Point> positions = new ArrayList<Point>();
+            for (Level<String> lv : lm.levels())
+                for (Vertex<String> v : lv.vertices) {
+                    old.add(v);
+                    levels.add(v.level);
+                    positions.add(new Point(v.pos));
+                }
+
+            Vertex<String> top = lm.first().vertices.get(0);
+            Vertex<String> r = g.makeVertex("root");
+            il.addVertex(r);
+            il.addEdge(r,top);
+            il.relayout();
+
+            assertEquals(dot, top.level-1, r.level);
+            assertTrue(dot, lm.first()==lm.get(r.level));
+            for( int i=0; i<old.size(); i++ ) {
+                Vertex<String> v = old.get(i);
+                assertEquals(dot, (int)levels.get(i), v.level);
+                if(v.level==top.level)
+                    assertEquals(dot, positions.get(i).y, v.pos.y); // the level of the successor makes room
+                else
+                    assertEquals(dot, positions.get(i), v.pos);
+            }
+            assertTrue(dot, r.pos.y+r.size.height<=top.pos.y);
+        }
+    }
+
+    /**
+     * {@link LayoutResult} should report every edge of the graph, concentrated or not,
+     * and {@link LayoutSession#freeze()} should keep the snapshot until the layout changes.
+     */
+    public void testFreeze() throws Exception {
+        for (String dot : Graph.DOT_FILES) {
+            for (boolean concentrate : new boolean[]{false,true}) {
+                Graph<String> g = Graph.parseDot(dot);
+                LayoutEngine engine = new LayoutEngine();
+                engine.setConcentrate(concentrate);
+                LayoutResult<Vertex<String>> r = engine.layout(g.makeNavigator(), Direction.LEFTRIGHT);
+                assertEquals(new ArrayList<Vertex<String>>(g), new ArrayList<Vertex<String>>(r.vertices()));
+                // edges reversed to break cycles are reported in the reversed direction
+                Set<Set<Vertex<String>>> expected = new HashSet<Set<Vertex<String>>>();
+                Set<Set<Vertex<String>>> actual = new HashSet<Set<Vertex<String>>>();
+                for (Vertex<String> v : g) {
+                    for (Vertex<String> w : v.forward)
+                        expected.add(new HashSet<Vertex<String>>(Arrays.asList(v,w)));
+                    for (Vertex<String> w : r.edges(v))
+                        actual.add(new HashSet<Vertex<String>>(Arrays.asList(v,w)));
+                }
+                assertEquals(expected, actual);
+                for (Vertex<String> v : g) {
+                    for (Vertex<String> w : g) {
+                        List<Point> p = r.edge(v,w);
+                        if(v.forward.contains(w) || w.forward.contains(v)) {
+                            List<Point> q = new ArrayList<Point>(r.edge(w,v));
+                            Collections.reverse(q);
+                            assertEquals(v+"->"+w, p, q);
+                        } else
+                            assertNull(v+"->"+w, p);
+                    }
+                }
+                assertNull(r.vertex(new Vertex<String>("none",null)));
+            }
+
+            Graph<String> g = Graph.parseDot(dot);
+            LayoutSession<Vertex<String>> s = new LayoutSession<Vertex<String>>(g.makeNavigator(), Direction.TOPDOWN);
+            LayoutResult<Vertex<String>> r = s.freeze();
+            assertSame(r, s.freeze());
+            Vertex<String> v = g.iterator().next();
+            assertTrue(s.removeVertex(v));
+            assertTrue(r!=s.freeze());
+            assertNotNull(r.vertex(v));
+            assertNull(s.freeze().vertex(v));
+
+            // a new vertex shows up once it's laid out
+            r = s.freeze();
+            s.addVertex(v,v.size);
+            assertSame(r, s.freeze());
+            assertNull(s.freeze().vertex(v));
+            s.relayout();
+            assertNotNull(s.freeze().vertex(v));
+        }
+    }
+
+    /**
+     * {@link LayoutEngine#layoutAsync} should compute the same layout on the executor,
+     * and cancelling the future should cancel the deadline.
+     */
+    public void testAsync() throws Exception {
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        try {
+            LayoutEngine engine = new LayoutEngine();
+            for (String dot : Graph.DOT_FILES) {
+                Graph<String> g = Graph.parseDot(dot);
+                LayoutResult<Vertex<String>> r = engine.layoutAsync(g.makeNavigator(), Direction.TOPDOWN, es).get();
+                Layout<Vertex<String>> l = new Layout<Vertex<String>>(g.makeNavigator(), Direction.TOPDOWN);
+                for (Vertex<String> v : g)
+                    assertEquals(dot, l.vertex(v), r.vertex(v));
+            }
+
+            // keep the executor busy so that the layout is cancelled before it starts
+            final CountDownLatch latch = new CountDownLatch(1);
+            es.execute(new Runnable() {
+                public void run() {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        throw new Error(e);
+                    }
+                }
+            });
+            Deadline d = Deadline.unbounded();
+            Graph<String> g = Graph.parseDot(Graph.DOT_FILES[0]);
+            CompletableFuture<LayoutResult<Vertex<String>>> f = engine.layoutAsync(g.makeNavigator(), Direction.TOPDOWN, d, es);
+            assertTrue(f.cancel(true));
+            assertTrue(d.isCancelled());
+            latch.countDown();
+            assertTrue(f.isCancelled());
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    /**
+     * Cancelling the future of {@link LayoutEngine#layoutAsync} should reach
+     * a {@link Coordinator} supplied by the caller while it's running.
+     */
+    public void testCancelSuppliedCoordinator() throws Exception {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final CountDownLatch returned = new CountDownLatch(1);
+        final AtomicBoolean sawExpired = new AtomicBoolean();
+        Coordinator c = new Coordinator() {
+            @Override
+            public <T> void layout(LevelMap<T> lm, Deadline deadline) {
+                running.countDown();
+                try {
+                    cancelled.await();
+                } catch (InterruptedException e) {
+                    throw new Error(e);
+                }
+                sawExpired.set(Deadline.isExpired(deadline));
+                super.layout(lm,deadline);
+                returned.countDown();
+            }
+        };
+
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        try {
+            LayoutEngine engine = new LayoutEngine();
+            engine.setPacking(null);
+            engine.setCoordinateAssigner(c);
+            Graph<String> g = Graph.parseDot(Graph.DOT_FILES[0]);
+            CompletableFuture<LayoutResult<Vertex<String>>> f = engine.layoutAsync(g.makeNavigator(), Direction.TOPDOWN, es);
+            running.await();
+            assertTrue(f.cancel(true));
+            cancelled.countDown();
+            assertTrue(returned.await(10, TimeUnit.SECONDS));
+            assertTrue(sawExpired.get());
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    /**
+     * A {@link Coordinator} should produce the same layouts when it's used by multiple threads at once.
+     */
+    public void testSharedCoordinator() throws Exception {
+        final Coordinator c = new Coordinator();
+        c.setConvergenceThreshold(0.01);
+        final List<Graph<String>> graphs = new ArrayList<Graph<String>>();
+        final List<Layout<Vertex<String>>> expected = new ArrayList<Layout<Vertex<String>>>();
+        for (String dot : Graph.DOT_FILES) {
+            Graph<String> g = Graph.parseDot(dot);
+            graphs.add(g);
+            expected.add(new Layout<Vertex<String>>(g.makeNavigator(), Direction.TOPDOWN, null, c));
+        }
+
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Layout<Vertex<String>>>>> futures = new ArrayList<Future<List<Layout<Vertex<String>>>>>();
+            for( int i=0; i<8; i++ ) {
+                futures.add(es.submit(new Callable<List<Layout<Vertex<String>>>>() {
+                    public List<Layout<Vertex<String>>> call() {
+                        List<Layout<Vertex<String>>> r = new ArrayList<Layout<Vertex<String>>>();
+                        for (Graph<String> g : graphs)
+                            r.add(new Layout<Vertex<String>>(g.makeNavigator(), Direction.TOPDOWN, null, c));
+                        return r;
+                    }
+                }));
+            }
+            for (Future<List<Layout<Vertex<String>>>> f : futures) {
+                List<Layout<Vertex<String>>> actual = f.get();
+                for( int i=0; i<graphs.size(); i++ )
+                    for (Vertex<String> v : graphs.get(i))
+                        assertEquals(expected.get(i).vertex(v), actual.get(i).vertex(v));
+            }
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    /**
+     * Connected components should be laid out by themselves and then packed,
+     * the same way with or without an executor, even when they share a {@link Coordinator}.
+     */
+    public void testComponents() throws Exception {
         Graph<String> g = new Graph<String>();
-        BufferedReader r = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream(resName)));
-        String line;
-        while ((line=r.readLine())!=null) {
-            if (!line.contains("->"))   continue;
-
-            Vertex<String> previous = null;
-            for (String token : line.split("->")) {
-                token = token.trim();
-                if (token.endsWith(";"))    token=token.substring(0,token.length()-1);
-                token = token.trim();
-
-                Vertex v = g.makeVertex(unquote(token));
-                if (previous!=null)
-                    previous.addEdge(v);
-                previous = v;
+        for (String dot : Graph.DOT_FILES)
+            g.addAll(Graph.parseDot(dot));
+
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        try {
+            for (Packing p : new Packing[]{new Packing.SideBySide(), new Packing.Shelf()}) {
+                Coordinator c = new Coordinator();
+                c.setConvergenceThreshold(0.01);
+                for (Coordinator shared : new Coordinator[]{null,c}) {
+                    LayoutEngine engine = new LayoutEngine();
+                    engine.setPacking(p);
+                    engine.setCoordinateAssigner(shared);
+                    LayoutResult<Vertex<String>> r1 = engine.layout(g.makeNavigator(), Direction.TOPDOWN);
+                    engine.setExecutor(es);
+                    LayoutResult<Vertex<String>> r2 = engine.layout(g.makeNavigator(), Direction.TOPDOWN);
+
+                    List<Rectangle> boxes = new ArrayList<Rectangle>();
+                    for (Vertex<String> v : g) {
+                        Rectangle r = r1.vertex(v);
+                        assertEquals(r, r2.vertex(v));
+                        for (Rectangle b : boxes)
+                            assertFalse(r+" overlaps with "+b, r.intersects(b));
+                        boxes.add(r);
+                        for (Vertex<String> w : v.forward)
+                            assertEquals(r1.edge(v,w), r2.edge(v,w));
+                    }
+                }
             }
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    private void assertValid(Graph<String> g, Deadline d) {
+        assertValid(g, new LayoutEngine().layout(g.makeNavigator(), Direction.TOPDOWN, d));
+    }
+
+    private void assertValid(Graph<String> g, LayoutResult<Vertex<String>> layout) {
+        List<Rectangle> boxes = new ArrayList<Rectangle>();
+        for (Vertex<String> v : g) {
+            Rectangle r = layout.vertex(v);
+            for (Rectangle b : boxes)
+                assertFalse(r+" overlaps with "+b, r.intersects(b));
+            boxes.add(r);
+            for (Vertex<String> w : v.forward)
+                assertNotNull(layout.edge(v,w));
         }
-        return g;
     }
 
-    private String unquote(String s) {
-        if (s.startsWith("\"") && s.endsWith("\""))
-            return s.substring(1,s.length()-1);
-        return s;
+    private Layout<Vertex<String>> layout(Graph<String> g) {
+        Layout<Vertex<String>> layout = new Layout<Vertex<String>>(g.makeNavigator(), Direction.TOPDOWN);
+        for (Vertex<String> v : g) {
+            v.pos.setLocation(
+                    layout.vertex(v).getCenterX(),
+                    layout.vertex(v).getCenterY());
+        }
+        return layout;
     }
 }
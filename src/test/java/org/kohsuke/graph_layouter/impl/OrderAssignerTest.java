@@ -5,8 +5,14 @@ import org.kohsuke.graph_layouter.impl.OrderingHeuristic.WeightedMedian;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Kohsuke Kawaguchi
@@ -113,6 +119,141 @@ public class OrderAssignerTest extends GraphTestBase {
         System.out.println(lm);
     }
 
+    /**
+     * The portfolio should never be worse than the default search, which is one of its members,
+     * and the result should not depend on the threads.
+     */
+    public void testPortfolio() throws IOException {
+        ExecutorService es = Executors.newFixedThreadPool(3);
+        try {
+            for (String dot : Graph.DOT_FILES) {
+                Graph<String> g = Graph.parseDot(dot);
+                new HierarchyBuilder().assignLevels(g, EdgeDirection.FORWARD);
+                new ProperTransformer().makeProper(g);
+
+                int xing = new OrderAssigner().layout(g).countCrossing();
+
+                LevelMap<String> lm1 = new PortfolioOrderAssigner(6,1).layout(g);
+                String order1 = lm1.toString();
+                int xing1 = lm1.countCrossing();
+                assertTrue(dot, xing1<=xing);
+
+                PortfolioOrderAssigner poa = new PortfolioOrderAssigner(6,1);
+                poa.setExecutor(es);
+                LevelMap<String> lm2 = poa.layout(g);
+                assertEquals(dot, xing1, lm2.countCrossing());
+                assertEquals(dot, order1, lm2.toString());
+            }
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    /**
+     * When the calling thread is interrupted, the portfolio should stop the searches on the executor,
+     * and leave the original ordering alone as none of the searches has completed.
+     */
+    public void testPortfolioInterrupted() throws Exception {
+        ExecutorService es = Executors.newFixedThreadPool(2);
+        try {
+            Graph<String> g = OrderingBenchmark.random(new Random(0),2000,4000);
+            new HierarchyBuilder().assignLevels(g, EdgeDirection.FORWARD);
+            new ProperTransformer().makeProper(g);
+            LevelMap<String> lm = new LevelMap<String>(g);
+            String order = lm.toString();
+
+            PortfolioOrderAssigner poa = new PortfolioOrderAssigner(4,0);
+            poa.setExecutor(es);
+            Thread.currentThread().interrupt();
+            try {
+                poa.layout(lm);
+            } finally {
+                assertTrue(Thread.interrupted()); // the status should be left as is
+            }
+            assertEquals(order, lm.toString());
+        } finally {
+            es.shutdown();
+        }
+        assertTrue(es.awaitTermination(1, TimeUnit.MINUTES));
+    }
+
+    /**
+     * The parallel transposition should not depend on the number of threads.
+     */
+    public void testParallelTranspose() throws IOException {
+        ForkJoinPool one = new ForkJoinPool(1), four = new ForkJoinPool(4);
+        try {
+            for (String dot : Graph.DOT_FILES) {
+                Graph<String> g = Graph.parseDot(dot);
+                new HierarchyBuilder().assignLevels(g, EdgeDirection.FORWARD);
+                new ProperTransformer().makeProper(g);
+
+                String[] results = new String[2];
+                ForkJoinPool[] pools = {one,four};
+                for( int i=0; i<2; i++ ) {
+                    OrderAssigner oa = new OrderAssigner();
+                    oa.setPool(pools[i]);
+                    oa.setParallelTranspose(true);
+                    LevelMap<String> lm = oa.layout(g);
+                    results[i] = lm.countCrossing()+"\n"+lm;
+                }
+                assertEquals(dot, results[0], results[1]);
+            }
+        } finally {
+            one.shutdown();
+            four.shutdown();
+        }
+    }
+
+    /**
+     * Sifting should end in an ordering that no single adjacent swap can improve.
+     */
+    public void testSifting() throws IOException {
+        for (String dot : Graph.DOT_FILES) {
+            Graph<String> g = Graph.parseDot(dot);
+            new HierarchyBuilder().assignLevels(g, EdgeDirection.FORWARD);
+            new ProperTransformer().makeProper(g);
+
+            LevelMap<String> lm = new LevelMap<String>(g);
+            int xing = lm.countCrossing();
+            new Sifting().layout(lm);
+            assertTrue(dot, lm.countCrossing()<=xing);
+
+            for (Level<String> lv : lm.levels()) {
+                CrossingMatrix<String> cm = new CrossingMatrix<String>(lv);
+                for( int i=0; i<lv.vertices.size()-1; i++ )
+                    assertTrue(dot, cm.swapDelta(i)>=0);
+            }
+        }
+    }
+
+    /**
+     * Reordering with the {@link OrderingHeuristic.Primitive} buffers should give the same result
+     * as reordering with {@link WeightedVertex}s.
+     */
+    public void testPrimitiveHeuristic() throws IOException {
+        List<Graph<String>> graphs = new ArrayList<Graph<String>>();
+        for (String dot : Graph.DOT_FILES)
+            graphs.add(Graph.parseDot(dot));
+        for( int i=0; i<4; i++ )
+            graphs.add(OrderingBenchmark.random(new Random(i),400,800));
+
+        for (Graph<String> g : graphs) {
+            new HierarchyBuilder().assignLevels(g, EdgeDirection.FORWARD);
+            new ProperTransformer().makeProper(g);
+
+            for (final OrderingHeuristic h : new OrderingHeuristic[]{new WeightedMedian(),new BaryCenter()}) {
+                OrderingHeuristic wrapped = new OrderingHeuristic() {
+                    public <T> float weight(Vertex<T> v, Level<T> current, LevelDirection dir) {
+                        return h.weight(v,current,dir);
+                    }
+                };
+                String expected = new OrderAssigner(wrapped).layout(g).toString();
+                assertEquals(expected, new OrderAssigner(h).layout(g).toString());
+            }
+        }
+    }
+
     /**
      * Convenient form to create an array.
      */
@@ -0,0 +1,96 @@
+package org.kohsuke.graph_layouter.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares {@link CrossingMinimizer}s on the bundled graphs and on larger synthetic ones.
+ *
+ * <p>
+ * The memory allocated by the calling thread during the layout is reported, when the JVM supports it.
+ *
+ * <p>
+ * This is not a unit test. Run it from the IDE, or with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=... -Dexec.classpathScope=test}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class OrderingBenchmark {
+    public static void main(String[] args) throws Exception {
+        List<String> names = new ArrayList<String>();
+        List<Graph<String>> graphs = new ArrayList<Graph<String>>();
+        for (String dot : Graph.DOT_FILES) {
+            names.add(dot);
+            graphs.add(Graph.parseDot(dot));
+        }
+        for (int sz : new int[]{200,1000,4000}) {
+            names.add("random"+sz);
+            graphs.add(random(new Random(sz),sz,sz*2));
+        }
+
+        System.out.printf("%-35s %-15s %8s %8s %10s %12s %12s%n","graph","engine","initial","final","ms","xing/ms","alloc KB");
+        for( int i=0; i<graphs.size(); i++ ) {
+            Graph<String> g = graphs.get(i);
+            new HierarchyBuilder().assignLevels(g, EdgeDirection.FORWARD);
+            new ProperTransformer().makeProper(g);
+
+            run(names.get(i), "OrderAssigner", g, new OrderAssigner());
+            run(names.get(i), "(w/o buffers)", g, new OrderAssigner(new OrderingHeuristic() {
+                // not OrderingHeuristic.Primitive, so OrderAssigner reorders with WeightedVertex
+                final OrderingHeuristic base = new OrderingHeuristic.WeightedMedian();
+                public <T> float weight(Vertex<T> v, Level<T> current, LevelDirection dir) {
+                    return base.weight(v,current,dir);
+                }
+            }));
+            run(names.get(i), "Sifting", g, new Sifting());
+        }
+    }
+
+    private static void run(String name, String engine, Graph<String> g, CrossingMinimizer m) {
+        // warm up
+        for( int i=0; i<3; i++ )
+            m.layout(new LevelMap<String>(g));
+
+        LevelMap<String> lm = new LevelMap<String>(g);
+        int initial = lm.countCrossing();
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        m.layout(lm);
+        double ms = (System.nanoTime()-start)/1000000.0;
+        bytes = allocatedBytes()-bytes;
+        int xing = lm.countCrossing();
+
+        System.out.printf("%-35s %-15s %8d %8d %10.2f %12.2f %12d%n",
+                name, engine, initial, xing, ms, (initial-xing)/ms, bytes/1024);
+    }
+
+    /**
+     * Bytes allocated by the current thread so far, or 0 if the JVM can't tell.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean b = ManagementFactory.getThreadMXBean();
+        if(b instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean)b).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return 0;
+    }
+
+    /**
+     * Random graph with the given number of vertices and edges.
+     */
+    static Graph<String> random(Random r, int nVertices, int nEdges) {
+        Graph<String> g = new Graph<String>();
+        List<Vertex<String>> vertices = new ArrayList<Vertex<String>>();
+        for( int i=0; i<nVertices; i++ )
+            vertices.add(g.makeVertex("v"+i));
+        for( int i=0; i<nEdges; i++ ) {
+            // mostly between close vertices, so that the graph is reasonably deep
+            int a = r.nextInt(nVertices);
+            int b = Math.min(nVertices-1, a+1+r.nextInt(20));
+            if(a!=b)
+                vertices.get(a).addEdge(vertices.get(b));
+        }
+        return g;
+    }
+}
@@ -2,6 +2,15 @@ package org.kohsuke.graph_layouter.impl;
 
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
 /**
  * @author Kohsuke Kawaguchi
  */
@@ -56,4 +65,298 @@ public class PreprocessorTest extends TestCase {
         assertEquals(lv+2,c.level);
     }
 
+    /**
+     * Network simplex layering should be valid and never need more dummy vertices than
+     * the longest path layering, and {@code fall} on top of it.
+     */
+    public void testNetworkSimplex() throws Exception {
+        for( int i=0; i<=Graph.DOT_FILES.length; i++ ) {
+            for (EdgeDirection dir : EdgeDirection.values()) {
+                Graph<String> g = graph(i);
+                HierarchyBuilder hb = new HierarchyBuilder();
+                hb.topologicalSort(g,dir);
+                hb.fall(g,dir);
+                int before = HierarchyBuilder.countDummies(g);
+
+                g = graph(i);
+                hb.setNetworkSimplex(true);
+                hb.assignLevels(g,dir);
+                assertLayered(g);
+                assertTrue(HierarchyBuilder.countDummies(g)<=before);
+            }
+        }
+    }
+
+    /**
+     * Clusters with edges to each other used to keep chasing each other, so fall never ended.
+     */
+    public void testFall() throws Exception {
+        for (long seed : new long[]{8,9,15,17}) {
+            for (EdgeDirection dir : EdgeDirection.values()) {
+                Graph<String> g = OrderingBenchmark.random(new Random(seed),(int)seed*10+20,(int)seed*20+40);
+                HierarchyBuilder hb = new HierarchyBuilder();
+                hb.topologicalSort(g,dir);
+                int before = HierarchyBuilder.countDummies(g);
+                hb.fall(g,dir);
+                assertLayered(g);
+                assertTrue(HierarchyBuilder.countDummies(g)<before);
+            }
+        }
+    }
+
+    /**
+     * {@code fall} should land where the old step-by-step version did, wherever that one ended.
+     */
+    public void testFallSameAsStepByStep() throws Exception {
+        int compared=0;
+        for( long seed=0; seed<200; seed++ ) {
+            for (EdgeDirection dir : EdgeDirection.values()) {
+                Random r = new Random(seed);
+                int n = 5+r.nextInt(40);
+                Graph<String> g = OrderingBenchmark.random(r,n,n+r.nextInt(n*2));
+                new HierarchyBuilder().topologicalSort(g,dir);
+                List<Integer> start = levels(g);
+
+                new HierarchyBuilder().fall(g,dir);
+                List<Integer> fell = levels(g);
+
+                int i=0;
+                for (Vertex<String> v : g)
+                    v.level = start.get(i++);
+                if(!stepByStepFall(g,dir,n*n))
+                    continue;   // clusters chase each other
+                assertEquals("seed="+seed+" dir="+dir, levels(g), fell);
+                compared++;
+            }
+        }
+        assertTrue(compared>300);
+    }
+
+    /**
+     * The step-by-step compaction {@code fall} used to do, as the reference. In each round,
+     * every cluster falls by the shortest distance to another cluster along its edges.
+     *
+     * @return
+     *      false if it didn't settle in the given number of rounds.
+     */
+    private boolean stepByStepFall(Graph<String> g, EdgeDirection dir, int maxRounds) {
+        List<Vertex<String>> vertices = new ArrayList<Vertex<String>>(g);
+        int n = vertices.size();
+        Map<Vertex<String>,Integer> index = new HashMap<Vertex<String>,Integer>();
+        for( int i=0; i<n; i++ )
+            index.put(vertices.get(i),i);
+
+        for( int round=0; round<maxRounds; round++ ) {
+            // clusters of vertices connected by edges that span one level
+            int[] cluster = new int[n];
+            Arrays.fill(cluster,-1);
+            for( int i=0; i<n; i++ ) {
+                if(cluster[i]>=0)   continue;
+                List<Vertex<String>> stack = new ArrayList<Vertex<String>>();
+                stack.add(vertices.get(i));
+                cluster[i] = i;
+                while(!stack.isEmpty()) {
+                    Vertex<String> v = stack.remove(stack.size()-1);
+                    List<Vertex<String>> adj = new ArrayList<Vertex<String>>(v.forward);
+                    adj.addAll(v.backward);
+                    for (Vertex<String> w : adj) {
+                        int j = index.get(w);
+                        if(Math.abs(w.level-v.level)==1 && cluster[j]<0) {
+                            cluster[j] = i;
+                            stack.add(w);
+                        }
+                    }
+                }
+            }
+
+            int[] drop = new int[n];
+            Arrays.fill(drop,Integer.MAX_VALUE);
+            for( int i=0; i<n; i++ ) {
+                Vertex<String> v = vertices.get(i);
+                for (Vertex<String> w : dir.getEdges(v))
+                    if(cluster[i]!=cluster[index.get(w)])
+                        drop[cluster[i]] = Math.min(drop[cluster[i]], Math.abs(w.level-v.level)-1);
+            }
+
+            boolean dropped = false;
+            for( int i=0; i<n; i++ ) {
+                int h = drop[cluster[i]];
+                if(h!=Integer.MAX_VALUE) {
+                    vertices.get(i).level += dir.sign()*h;
+                    dropped = true;
+                }
+            }
+            if(!dropped)
+                return true;
+        }
+        return false;
+    }
+
+    private Graph<String> graph(int i) throws Exception {
+        if(i<Graph.DOT_FILES.length)
+            return Graph.parseDot(Graph.DOT_FILES[i]);
+        return OrderingBenchmark.random(new Random(0),300,600);
+    }
+
+    /**
+     * Compares the network simplex layering against all the layerings of small graphs.
+     */
+    public void testNetworkSimplexOptimal() throws Exception {
+        Random r = new Random(0);
+        for( int t=0; t<300; t++ ) {
+            int n = 2+r.nextInt(4);
+            Graph<String> g = new Graph<String>();
+            List<Vertex<String>> vertices = new ArrayList<Vertex<String>>();
+            for( int i=0; i<n; i++ )
+                vertices.add(g.makeVertex("v"+i));
+            for( int i=r.nextInt(n*2); i>0; i-- ) {
+                int a = r.nextInt(n), b = r.nextInt(n);
+                if(a<b) vertices.get(a).addEdge(vertices.get(b));
+            }
+
+            HierarchyBuilder hb = new HierarchyBuilder();
+            hb.setNetworkSimplex(true);
+            hb.assignLevels(g, t%2==0 ? EdgeDirection.FORWARD : EdgeDirection.BACKWARD);
+            assertLayered(g);
+            assertEquals(minDummies(vertices,new int[n],0), HierarchyBuilder.countDummies(g));
+        }
+    }
+
+    /**
+     * {@link GreedyCycleRemover} should make the graph acyclic by reversing at most half of the edges.
+     */
+    public void testGreedyCycleRemover() throws Exception {
+        Random r = new Random(0);
+        for( int t=0; t<100; t++ ) {
+            int n = 1+r.nextInt(50);
+            Graph<String> g = new Graph<String>();
+            List<Vertex<String>> vertices = new ArrayList<Vertex<String>>();
+            for( int i=0; i<n; i++ )
+                vertices.add(g.makeVertex("v"+i));
+            for( int i=r.nextInt(n*4); i>0; i-- ) {
+                int a = r.nextInt(n), b = r.nextInt(n);
+                if(a!=b)    vertices.get(a).addEdge(vertices.get(b));
+            }
+            int m = countEdges(g);
+
+            int reversed = new GreedyCycleRemover().removeCycles(g);
+            assertTrue(reversed*2<=m);
+
+            // in the DFS postorder, every edge of a DAG goes to an earlier vertex
+            IntGraph<String> ig = new IntGraph<String>(g);
+            int[] post = ig.postOrder(EdgeDirection.FORWARD);
+            int[] index = new int[n];
+            for( int i=0; i<n; i++ )
+                index[post[i]] = i;
+            for( int v=0; v<n; v++ )
+                for( int e=ig.fwdStart[v]; e<ig.fwdStart[v+1]; e++ )
+                    assertTrue(index[ig.fwdAdj[e]]<index[v]);
+
+            // a reversed edge of a 2-cycle merges with the other one
+            m = countEdges(g);
+            HierarchyBuilder hb = new HierarchyBuilder();
+            hb.setCycleRemover(new GreedyCycleRemover());
+            hb.assignLevels(g,EdgeDirection.FORWARD);
+            assertEquals(m, countEdges(g));
+            assertLayered(g);
+        }
+    }
+
+    /**
+     * Snapshots over the same vertices should keep their own IDs.
+     */
+    public void testIntGraphIds() throws Exception {
+        Graph<String> g = OrderingBenchmark.random(new Random(0),100,200);
+        List<Vertex<String>> reversed = new ArrayList<Vertex<String>>(g);
+        Collections.reverse(reversed);
+
+        IntGraph<String> a = new IntGraph<String>(g);
+        IntGraph<String> b = new IntGraph<String>(reversed);
+        for( int i=0; i<a.size(); i++ ) {
+            assertEquals(i, a.id(a.vertices[i]));
+            assertEquals(i, b.id(b.vertices[i]));
+            assertSame(a.vertices[i], b.vertices[b.size()-1-i]);
+        }
+        assertEquals(-1, a.id(new Vertex<String>("none",null)));
+    }
+
+    /**
+     * Levels should be no wider than the bound, and stay as they are if none is too wide.
+     */
+    public void testMaxWidth() throws Exception {
+        for( int i=0; i<=Graph.DOT_FILES.length; i++ ) {
+            for (EdgeDirection dir : EdgeDirection.values()) {
+                Graph<String> g = graph(i);
+                new HierarchyBuilder().assignLevels(g,dir);
+                int max = Collections.max(countWidths(g).values());
+
+                Graph<String> g2 = graph(i);
+                HierarchyBuilder hb = new HierarchyBuilder();
+                hb.setMaxWidth(max,false);
+                hb.assignLevels(g2,dir);
+                assertEquals(levels(g), levels(g2));
+
+                for (int w : new int[]{1,3,max-1}) {
+                    if(w<1) continue;
+                    for (boolean dummies : new boolean[]{false,true}) {
+                        g2 = graph(i);
+                        hb.setMaxWidth(w,dummies);
+                        hb.assignLevels(g2,dir);
+                        assertLayered(g2);
+                        assertEquals(g.size(), g2.size());
+                        if(!dummies)
+                            assertTrue(Collections.max(countWidths(g2).values())<=w);
+                    }
+                }
+            }
+        }
+    }
+
+    private List<Integer> levels(Graph<String> g) {
+        List<Integer> r = new ArrayList<Integer>();
+        for (Vertex<String> v : g)
+            r.add(v.level);
+        return r;
+    }
+
+    private Map<Integer,Integer> countWidths(Graph<String> g) {
+        Map<Integer,Integer> r = new TreeMap<Integer,Integer>();
+        for (Vertex<String> v : g) {
+            Integer c = r.get(v.level);
+            r.put(v.level, c==null ? 1 : c+1);
+        }
+        return r;
+    }
+
+    private int countEdges(Graph<String> g) {
+        int m=0;
+        for (Vertex<String> v : g)
+            m += v.forward.size();
+        return m;
+    }
+
+    private void assertLayered(Graph<String> g) {
+        for (Vertex<String> v : g)
+            for (Vertex<String> w : v.forward)
+                assertTrue(v.level<w.level);
+    }
+
+    private int minDummies(List<Vertex<String>> vertices, int[] levels, int i) {
+        int n = vertices.size();
+        if(i<n) {
+            int min = Integer.MAX_VALUE;
+            for( levels[i]=0; levels[i]<n; levels[i]++ )
+                min = Math.min(min,minDummies(vertices,levels,i+1));
+            return min;
+        }
+
+        int r=0;
+        for( int v=0; v<n; v++ )
+            for (Vertex<String> w : vertices.get(v).forward) {
+                int span = levels[vertices.indexOf(w)]-levels[v];
+                if(span<1)  return Integer.MAX_VALUE;
+                r += span-1;
+            }
+        return r;
+    }
 }
@@ -0,0 +1,61 @@
+package org.kohsuke.graph_layouter.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the heap retained by the dummy vertices that {@link ProperTransformer} inserts,
+ * on random graphs with many long edges.
+ *
+ * <p>
+ * This is not a unit test. Run it from the IDE, or with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=... -Dexec.classpathScope=test}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class ProperTransformerBenchmark {
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%10s %10s %10s %12s %12s%n","vertices","edges","dummies","retained KB","bytes/dummy");
+        for (int sz : new int[]{1000,2000,4000}) {
+            Graph<String> g = longEdges(new Random(sz),sz,sz*4);
+            new HierarchyBuilder().assignLevels(g, EdgeDirection.FORWARD);
+            int n = g.size();
+            List<Vertex<String>> copy = new ArrayList<Vertex<String>>(n*200);   // so that its growth isn't counted
+
+            copy.addAll(g);
+            long before = usedHeap();
+            new ProperTransformer().makeProper(copy);
+            long bytes = usedHeap()-before;
+            int dummies = copy.size()-n;
+
+            System.out.printf("%10d %10d %10d %12d %12d%n", n, sz*4, dummies, bytes/1024, dummies==0 ? 0 : bytes/dummies);
+        }
+    }
+
+    /**
+     * Random graph whose edges mostly span many levels.
+     */
+    private static Graph<String> longEdges(Random r, int nVertices, int nEdges) {
+        Graph<String> g = new Graph<String>();
+        List<Vertex<String>> vertices = new ArrayList<Vertex<String>>();
+        for( int i=0; i<nVertices; i++ )
+            vertices.add(g.makeVertex("v"+i));
+        for( int i=1; i<nVertices; i++ )
+            vertices.get(i-1).addEdge(vertices.get(i)); // a long spine
+        for( int i=0; i<nEdges; i++ ) {
+            int a = r.nextInt(nVertices);
+            int b = Math.min(nVertices-1, a+1+r.nextInt(100));
+            if(a!=b)
+                vertices.get(a).addEdge(vertices.get(b));
+        }
+        return g;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for( int i=0; i<5; i++ )
+            System.gc();
+        return rt.totalMemory()-rt.freeMemory();
+    }
+}
@@ -1,11 +1,9 @@
 package org.kohsuke.graph_layouter.impl;
 
-import junit.framework.TestCase;
-
 /**
  * @author Kohsuke Kawaguchi
  */
-public class ProperTransformerTest extends TestCase {
+public class ProperTransformerTest extends GraphTestBase {
     /**
      * <pre>
      * a -+-> b ---> c -+-> d
@@ -36,4 +34,47 @@ public class ProperTransformerTest extends TestCase {
                 assertEquals(w.level+1,v.level);
         }
     }
+
+    /**
+     * Long edges from a share the dummy vertices, and so do the ones to e.
+     * <pre>
+     * a         <-- level 0
+     * |\
+     * | | b     <-- level 1
+     * | | |
+     * | | | f   <-- level 2
+     * | | |/
+     * c | |     <-- level 3
+     *   |/
+     *   d e     <-- level 4
+     * </pre>
+     */
+    public void testConcentrate() throws Exception {
+        Graph<String> g = new Graph<String>();
+        Vertex<String> a = g.makeVertex("a");
+        Vertex<String> b = g.makeVertex("b");
+        Vertex<String> c = g.makeVertex("c");
+        Vertex<String> d = g.makeVertex("d");
+        Vertex<String> e = g.makeVertex("e");
+        Vertex<String> f = g.makeVertex("f");
+        a.addEdges(c,d);
+        b.addEdge(e);
+        f.addEdge(e);
+        a.level=0; b.level=1; f.level=2; c.level=3; d.level=e.level=4;
+
+        ProperTransformer pt = new ProperTransformer();
+        pt.setConcentrate(true);
+        pt.makeProper(g);
+
+        // 3 dummies from a instead of 5, and 2 to e instead of 3
+        assertEquals(6+3+2,g.size());
+        for (Vertex<String> v : g) {
+            for (Vertex w : v.forward)
+                assertEquals(v.level+1,w.level);
+            if(v.isDummy())
+                assertTrue(v.source==a || v.sink==e);
+        }
+        assertEquals(1,a.forward.size());
+        assertEquals(1,e.backward.size());
+    }
 }